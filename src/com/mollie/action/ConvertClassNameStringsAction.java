@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.action;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
+import com.jetbrains.php.lang.psi.elements.StringLiteralExpression;
+import com.mollie.index.PhpClassNameStringIndex;
+import com.mollie.intention.PhpReplaceClassNameStringWithClassKeyword;
+import com.mollie.util.PhpClassNameFilter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Converts all class name strings in the project to the PHP 5.5 ::class notation. Files are scanned concurrently in
+ * background read actions. After the user confirms, the replacements are applied in chunks, each in its own command on
+ * the EDT, so the UI stays responsive. All chunks share a command group, so they can be undone in one step.
+ */
+public class ConvertClassNameStringsAction extends AnAction
+{
+	protected static final Logger LOG = Logger.getInstance(ConvertClassNameStringsAction.class);
+
+	protected static final String COMMAND_NAME = "Convert Class Name Strings to ::class";
+
+	// Number of files to convert per command.
+	protected static final int FILES_PER_CHUNK = 50;
+
+	/**
+	 * Only enable the action when there's a project.
+	 *
+	 * @param event The action event.
+	 */
+	@Override
+	public void update (AnActionEvent event)
+	{
+		event.getPresentation().setEnabled(event.getData(CommonDataKeys.PROJECT) != null);
+	}
+
+	/**
+	 * Look for class name strings in the background, then ask for confirmation and convert them.
+	 *
+	 * @param event The action event.
+	 */
+	@Override
+	public void actionPerformed (AnActionEvent event)
+	{
+		final Project project = event.getData(CommonDataKeys.PROJECT);
+
+		if (project == null)
+		{
+			return;
+		}
+
+		ProgressManager.getInstance().run(
+			new Task.Backgroundable(project, "Looking for class name strings", true)
+			{
+				protected Collection<List<SmartPsiElementPointer<PsiElement>>> files_to_convert;
+
+				public void run (@NotNull ProgressIndicator indicator)
+				{
+					indicator.setIndeterminate(false);
+
+					files_to_convert = findClassNameStrings(project, indicator);
+				}
+
+				@Override
+				public void onSuccess ()
+				{
+					confirmAndConvert(project, files_to_convert);
+				}
+			}
+		);
+	}
+
+	/**
+	 * Show how many class name strings were found, and convert them all in the background if the user agrees.
+	 *
+	 * @param project          The project to convert.
+	 * @param files_to_convert The class name strings to replace, grouped per file.
+	 */
+	protected void confirmAndConvert (@NotNull final Project project, @NotNull final Collection<List<SmartPsiElementPointer<PsiElement>>> files_to_convert)
+	{
+		if (project.isDisposed())
+		{
+			return;
+		}
+
+		int string_count = 0;
+
+		for (List<SmartPsiElementPointer<PsiElement>> file_strings : files_to_convert)
+		{
+			string_count += file_strings.size();
+		}
+
+		if (string_count == 0)
+		{
+			Messages.showInfoMessage(project, "No class name strings found.", COMMAND_NAME);
+			return;
+		}
+
+		int answer = Messages.showYesNoDialog(
+			project,
+			"Convert " + string_count + " class name string(s) in " + files_to_convert.size() + " file(s) to ::class?",
+			COMMAND_NAME,
+			Messages.getQuestionIcon()
+		);
+
+		if (answer != Messages.YES)
+		{
+			return;
+		}
+
+		ProgressManager.getInstance().run(
+			new Task.Backgroundable(project, "Converting class name strings to ::class", true)
+			{
+				public void run (@NotNull ProgressIndicator indicator)
+				{
+					convert(project, files_to_convert, indicator);
+				}
+			}
+		);
+	}
+
+	/**
+	 * Convert the class name strings chunk by chunk. Every chunk is a separate command in the same group, so the EDT
+	 * isn't blocked for long, and the whole conversion is still a single undo step.
+	 *
+	 * @param project          The project to convert.
+	 * @param files_to_convert The class name strings to replace, grouped per file.
+	 * @param indicator        The progress indicator.
+	 */
+	protected void convert (@NotNull Project project, @NotNull Collection<List<SmartPsiElementPointer<PsiElement>>> files_to_convert, @NotNull ProgressIndicator indicator)
+	{
+		List<List<SmartPsiElementPointer<PsiElement>>> chunk = new ArrayList<List<SmartPsiElementPointer<PsiElement>>>();
+		Object group_id                                      = new Object();
+		int converted_files                                  = 0;
+
+		indicator.setIndeterminate(false);
+
+		for (List<SmartPsiElementPointer<PsiElement>> file_strings : files_to_convert)
+		{
+			chunk.add(file_strings);
+
+			if (chunk.size() == FILES_PER_CHUNK)
+			{
+				indicator.checkCanceled();
+				replaceClassNameStrings(project, chunk, group_id);
+
+				converted_files += chunk.size();
+				indicator.setFraction((double) converted_files / files_to_convert.size());
+
+				chunk = new ArrayList<List<SmartPsiElementPointer<PsiElement>>>();
+			}
+		}
+
+		if (!chunk.isEmpty())
+		{
+			indicator.checkCanceled();
+			replaceClassNameStrings(project, chunk, group_id);
+		}
+	}
+
+	/**
+	 * Scan the PHP files in the project concurrently for class name strings. Only files that the index says contain a
+	 * string naming a class are scanned.
+	 *
+	 * @param project   The project to scan.
+	 * @param indicator The progress indicator.
+	 *
+	 * @return The class name strings, grouped per file.
+	 */
+	protected Collection<List<SmartPsiElementPointer<PsiElement>>> findClassNameStrings (@NotNull final Project project, @NotNull final ProgressIndicator indicator)
+	{
+		List<VirtualFile> files = DumbService.getInstance(project).runReadActionInSmartMode(
+			new Computable<List<VirtualFile>>()
+			{
+				public List<VirtualFile> compute ()
+				{
+					// Without an up to date Bloom filter, every key that looks like a class name would pass.
+					PhpClassNameFilter.getInstance(project).ensureUpToDate();
+
+					return new ArrayList<VirtualFile>(
+						PhpClassNameStringIndex.getFilesWithClassNameStrings(project, GlobalSearchScope.projectScope(project))
+					);
+				}
+			}
+		);
+
+		final Collection<List<SmartPsiElementPointer<PsiElement>>> files_to_convert = new ConcurrentLinkedQueue<List<SmartPsiElementPointer<PsiElement>>>();
+
+		JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+			files,
+			indicator,
+			true,
+			new Processor<VirtualFile>()
+			{
+				public boolean process (final VirtualFile file)
+				{
+					List<SmartPsiElementPointer<PsiElement>> file_strings = ApplicationManager.getApplication().runReadAction(
+						new Computable<List<SmartPsiElementPointer<PsiElement>>>()
+						{
+							public List<SmartPsiElementPointer<PsiElement>> compute ()
+							{
+								return findClassNameStringsInFile(project, file);
+							}
+						}
+					);
+
+					if (!file_strings.isEmpty())
+					{
+						files_to_convert.add(file_strings);
+					}
+
+					return true;
+				}
+			}
+		);
+
+		return files_to_convert;
+	}
+
+	/**
+	 * Find the class name strings in a single file. Must be called from a read action.
+	 *
+	 * @param project The project of the file.
+	 * @param file    The file to look in.
+	 *
+	 * @return Pointers to the contents of the class name strings.
+	 */
+	protected List<SmartPsiElementPointer<PsiElement>> findClassNameStringsInFile (@NotNull Project project, @NotNull VirtualFile file)
+	{
+		List<SmartPsiElementPointer<PsiElement>> file_strings = new ArrayList<SmartPsiElementPointer<PsiElement>>();
+		PsiFile psi_file                                      = file.isValid() ? PsiManager.getInstance(project).findFile(file) : null;
+
+		if (psi_file == null)
+		{
+			return file_strings;
+		}
+
+		SmartPointerManager pointer_manager = SmartPointerManager.getInstance(project);
+
+		for (StringLiteralExpression expression : PsiTreeUtil.findChildrenOfType(psi_file, StringLiteralExpression.class))
+		{
+			ProgressManager.checkCanceled();
+
+			PsiElement contents = expression.getFirstChild();
+
+			if (PhpReplaceClassNameStringWithClassKeyword.isClassNameString(project, contents))
+			{
+				file_strings.add(pointer_manager.createSmartPsiElementPointer(contents));
+			}
+		}
+
+		return file_strings;
+	}
+
+	/**
+	 * Replace the class name strings of a chunk of files, in a single command on the EDT.
+	 *
+	 * @param project  The project to convert.
+	 * @param chunk    The class name strings to replace, grouped per file.
+	 * @param group_id The command group of the whole conversion.
+	 */
+	protected void replaceClassNameStrings (@NotNull final Project project, @NotNull final List<List<SmartPsiElementPointer<PsiElement>>> chunk, @NotNull final Object group_id)
+	{
+		ApplicationManager.getApplication().invokeAndWait(
+			new Runnable()
+			{
+				public void run ()
+				{
+					if (project.isDisposed())
+					{
+						return;
+					}
+
+					CommandProcessor.getInstance().executeCommand(
+						project,
+						new Runnable()
+						{
+							public void run ()
+							{
+								ApplicationManager.getApplication().runWriteAction(
+									new Runnable()
+									{
+										public void run ()
+										{
+											for (List<SmartPsiElementPointer<PsiElement>> file_strings : chunk)
+											{
+												for (SmartPsiElementPointer<PsiElement> pointer : file_strings)
+												{
+													PsiElement contents = pointer.getElement();
+
+													if (contents != null && contents.isValid())
+													{
+														PhpReplaceClassNameStringWithClassKeyword.replaceWithClassKeyword(project, contents);
+													}
+												}
+											}
+										}
+									}
+								);
+							}
+						},
+						COMMAND_NAME,
+						group_id
+					);
+				}
+			},
+			ModalityState.defaultModalityState()
+		);
+	}
+}
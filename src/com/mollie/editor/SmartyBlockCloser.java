@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.editor;
+
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.DocumentUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.mollie.util.SmartyIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Inserts closing tags for Smarty blocks. Looking up block plugins needs the PHP index, so it's done in a non-blocking
+ * background read action, which is restarted when a write action comes along. Requests are coalesced per editor: a
+ * request expires as soon as a newer keystroke comes in or the document changes.
+ */
+public class SmartyBlockCloser
+{
+	protected static final Logger LOG = Logger.getInstance(SmartyBlockCloser.class);
+
+	// Use bulk update mode when inserting at least this many closing tags at once.
+	protected static final int BULK_UPDATE_THRESHOLD = 20;
+
+	protected static final Key<AtomicInteger> GENERATION = Key.create("com.mollie.smarty.block.closer.generation");
+
+	/**
+	 * A tag that might need a closing tag.
+	 */
+	public static class OpeningTag
+	{
+		protected final int offset;
+		protected final String name;
+
+		/**
+		 * @param offset Where the closing tag should be inserted.
+		 * @param name   The name of the tag.
+		 */
+		public OpeningTag (int offset, String name)
+		{
+			this.offset = offset;
+			this.name   = name;
+		}
+	}
+
+	/**
+	 * Schedule inserting closing tags for the opening tags that turn out to be block plugins.
+	 *
+	 * @param project The current project.
+	 * @param editor  The active editor.
+	 * @param tags    The opening tags, ordered from last to first in the document.
+	 */
+	public static void schedule (@NotNull final Project project, @NotNull final Editor editor, @NotNull final List<OpeningTag> tags)
+	{
+		final Document document = editor.getDocument();
+		final long stamp        = document.getModificationStamp();
+		final int generation    = getGeneration(editor).incrementAndGet();
+
+		ReadAction
+			.nonBlocking(
+				new Callable<List<OpeningTag>>()
+				{
+					public List<OpeningTag> call ()
+					{
+						SmartyIndex smarty_index    = SmartyIndex.getInstance(project);
+						List<OpeningTag> block_tags = new ArrayList<OpeningTag>();
+
+						for (OpeningTag tag : tags)
+						{
+							if (smarty_index.isBlockPlugin(tag.name))
+							{
+								block_tags.add(tag);
+							}
+						}
+
+						return block_tags;
+					}
+				}
+			)
+			.expireWhen(
+				new BooleanSupplier()
+				{
+					public boolean getAsBoolean ()
+					{
+						return project.isDisposed() || editor.isDisposed() || !isCurrent(editor, generation, stamp);
+					}
+				}
+			)
+			.finishOnUiThread(
+				ModalityState.stateForComponent(editor.getComponent()),
+				new Consumer<List<OpeningTag>>()
+				{
+					public void accept (List<OpeningTag> block_tags)
+					{
+						if (!block_tags.isEmpty())
+						{
+							insertClosingTags(project, editor, block_tags);
+						}
+					}
+				}
+			)
+			.submit(AppExecutorUtil.getAppExecutorService());
+	}
+
+	/**
+	 * Insert closing tags after the given opening tags. Each tag is inserted separately, so range markers and undo see
+	 * small local changes and the caret model keeps the carets in place. All inserts share a single command, and many
+	 * of them are done in bulk update mode.
+	 *
+	 * @param project The current project.
+	 * @param editor  The editor to insert the closing tags in.
+	 * @param tags    The opening tags, ordered from last to first in the document.
+	 */
+	protected static void insertClosingTags (@NotNull Project project, @NotNull final Editor editor, @NotNull final List<OpeningTag> tags)
+	{
+		final Document document = editor.getDocument();
+
+		WriteCommandAction.runWriteCommandAction(
+			project,
+			new Runnable()
+			{
+				public void run ()
+				{
+					DocumentUtil.executeInBulk(
+						document,
+						tags.size() >= BULK_UPDATE_THRESHOLD,
+						new Runnable()
+						{
+							public void run ()
+							{
+								// Going from last to first keeps the offsets of the remaining tags valid.
+								for (OpeningTag tag : tags)
+								{
+									document.insertString(tag.offset, getClosingTag(tag));
+								}
+							}
+						}
+					);
+				}
+			}
+		);
+	}
+
+	protected static String getClosingTag (OpeningTag tag)
+	{
+		return "{/" + tag.name + "}";
+	}
+
+	/**
+	 * Check if a request is still the latest one for its editor, and the document hasn't changed since.
+	 *
+	 * @param editor     The editor of the request.
+	 * @param generation The generation of the request.
+	 * @param stamp      The document's modification stamp at the time of the request.
+	 *
+	 * @return True if the request is still current.
+	 */
+	protected static boolean isCurrent (Editor editor, int generation, long stamp)
+	{
+		return getGeneration(editor).get() == generation && editor.getDocument().getModificationStamp() == stamp;
+	}
+
+	protected static AtomicInteger getGeneration (Editor editor)
+	{
+		AtomicInteger generation = editor.getUserData(GENERATION);
+
+		if (generation == null)
+		{
+			generation = new AtomicInteger();
+			editor.putUserData(GENERATION, generation);
+		}
+
+		return generation;
+	}
+}
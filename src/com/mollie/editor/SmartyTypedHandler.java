@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.editor;
+
+import com.intellij.codeInsight.editorActions.TypedHandlerDelegate;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Caret;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.EditorHighlighter;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import com.jetbrains.smarty.SmartyFile;
+import com.jetbrains.smarty.SmartyLanguage;
+import com.jetbrains.smarty.lang.SmartyTokenTypes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adds autocomplete for Smarty blocks. Only needs the editor's highlighter and the plugin names from SmartyIndex,
+ * which come from a snapshot while the project is being indexed, so this keeps working during indexing.
+ */
+public class SmartyTypedHandler extends TypedHandlerDelegate implements DumbAware
+{
+	protected static final Logger LOG = Logger.getInstance(SmartyTypedHandler.class);
+
+	// Stop looking for the start of a tag after this many characters.
+	protected static final int MAX_TAG_LENGTH = 1000;
+
+	/**
+	 * Called after the user typed a character. Currently only used to autocomplete Smarty blocks.
+	 *
+	 * @param c       The character that the user typed.
+	 * @param project The current project.
+	 * @param editor  The active editor.
+	 * @param file    The current file.
+	 *
+	 * @return Always CONTINUE, so other handlers get their turn.
+	 */
+	@Override
+	public Result charTyped (char c, @NotNull Project project, @NotNull Editor editor, @NotNull PsiFile file)
+	{
+		// Check if we're typing a closing accolade in a Smarty file, before doing anything else.
+		if (c != '}' || !(file instanceof SmartyFile))
+		{
+			return Result.CONTINUE;
+		}
+
+		Document document = editor.getDocument();
+
+		// Make sure we can insert stuff.
+		if (editor.isViewer() || !document.isWritable() || !(editor instanceof EditorEx))
+		{
+			return Result.CONTINUE;
+		}
+
+		// Work on the highlighter's tokens, which are up to date even though the PSI isn't committed yet.
+		EditorHighlighter highlighter = ((EditorEx) editor).getHighlighter();
+		CharSequence text             = document.getCharsSequence();
+
+		// Check at every caret if we're closing a tag.
+		List<Caret> carets                      = editor.getCaretModel().getAllCarets();
+		List<SmartyBlockCloser.OpeningTag> tags = new ArrayList<SmartyBlockCloser.OpeningTag>();
+
+		// Make sure to invert the list of carets to prevent caret position issues when inserting new content.
+		Collections.reverse(carets);
+
+		for (Caret caret : carets)
+		{
+			int caret_position = caret.getOffset();
+
+			if (caret_position < 1)
+			{
+				continue;
+			}
+
+			// Find the tag the accolade closes. (Note we have to move one position back due to the new character.)
+			String tag_name = getOpeningTagName(highlighter, text, caret_position - 1);
+
+			if (tag_name == null)
+			{
+				continue;
+			}
+
+			tags.add(new SmartyBlockCloser.OpeningTag(caret_position, tag_name));
+		}
+
+		// If we have valid block plugins, autocomplete with closing tags. Don't wait for the PHP index here.
+		if (!tags.isEmpty())
+		{
+			SmartyBlockCloser.schedule(project, editor, tags);
+		}
+
+		return Result.CONTINUE;
+	}
+
+	/**
+	 * Find the name of the opening tag that is closed by the accolade at a given offset. Walks back over the tag's
+	 * tokens, so the amount of work is bounded by the length of the tag.
+	 *
+	 * @param highlighter The editor's highlighter.
+	 * @param text        The document's text.
+	 * @param offset      The offset of the closing accolade.
+	 *
+	 * @return The name of the tag, or NULL if the accolade doesn't close an opening tag.
+	 */
+	@Nullable
+	protected String getOpeningTagName (EditorHighlighter highlighter, CharSequence text, int offset)
+	{
+		HighlighterIterator iterator = highlighter.createIterator(offset);
+
+		if (iterator.atEnd() || !isSmartyToken(iterator.getTokenType()))
+		{
+			return null;
+		}
+
+		// Step over the closing accolade itself.
+		iterator.retreat();
+
+		while (!iterator.atEnd() && offset - iterator.getStart() <= MAX_TAG_LENGTH)
+		{
+			IElementType token = iterator.getTokenType();
+
+			// Whitespace between attributes isn't a Smarty token, but it's still part of the tag.
+			if (token == TokenType.WHITE_SPACE)
+			{
+				iterator.retreat();
+				continue;
+			}
+
+			if (token == SmartyTokenTypes.END_TAG_START || !isSmartyToken(token) || isTagEnd(text, iterator))
+			{
+				// Don't close again if we're already in a closing tag, and never walk into a previous tag.
+				return null;
+			}
+
+			if (token == SmartyTokenTypes.START_TAG_START)
+			{
+				// The tag name has to follow the accolade directly.
+				iterator.advance();
+
+				if (iterator.atEnd() || iterator.getTokenType() != SmartyTokenTypes.IDENTIFIER)
+				{
+					return null;
+				}
+
+				return text.subSequence(iterator.getStart(), iterator.getEnd()).toString();
+			}
+
+			iterator.retreat();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Check if a token is part of a Smarty tag, rather than the surrounding template data.
+	 *
+	 * @param token The token type.
+	 *
+	 * @return True for Smarty tokens.
+	 */
+	protected boolean isSmartyToken (@Nullable IElementType token)
+	{
+		return token != null && token.getLanguage().is(SmartyLanguage.INSTANCE);
+	}
+
+	/**
+	 * Check if the iterator is at the closing accolade of another tag.
+	 *
+	 * @param text     The document's text.
+	 * @param iterator The highlighter iterator.
+	 *
+	 * @return True if the token is a lone closing accolade.
+	 */
+	protected boolean isTagEnd (CharSequence text, HighlighterIterator iterator)
+	{
+		return iterator.getEnd() - iterator.getStart() == 1 && text.charAt(iterator.getStart()) == '}';
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.index;
+
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.php.lang.PhpFileType;
+import com.jetbrains.php.lang.PhpLanguage;
+import com.jetbrains.php.lang.lexer.PhpTokenTypes;
+import com.mollie.util.PhpClassNameFilter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Indexes string literals that look like PHP class names, e.g. 'Foo_Bar' or "\Foo\Bar". Keys are normalized with
+ * normalize(), so they can be looked up by short name or fully qualified name.
+ */
+public class PhpClassNameStringIndex extends ScalarIndexExtension<String>
+{
+	public static final ID<String, Void> NAME = ID.create("com.mollie.php.class.name.string");
+
+	/**
+	 * Normalize a class name: no leading backslash, and lowercase, since PHP class names are case insensitive.
+	 *
+	 * @param class_name The class name.
+	 *
+	 * @return The normalized class name.
+	 */
+	@NotNull
+	public static String normalize (@NotNull String class_name)
+	{
+		return (class_name.startsWith("\\") ? class_name.substring(1) : class_name).toLowerCase();
+	}
+
+	/**
+	 * Get all the files that contain a string literal with a given class name.
+	 *
+	 * @param class_name The short or fully qualified class name.
+	 * @param scope      The scope to look in.
+	 *
+	 * @return The files.
+	 */
+	@NotNull
+	public static Collection<VirtualFile> getFilesWithClassNameString (@NotNull String class_name, @NotNull GlobalSearchScope scope)
+	{
+		return FileBasedIndex.getInstance().getContainingFiles(NAME, normalize(class_name), scope);
+	}
+
+	/**
+	 * Get all the files in the project's content that contain a string literal that might name an existing class.
+	 * Call PhpClassNameFilter.ensureUpToDate() first, or every string that looks like a class name might be one.
+	 *
+	 * @param project The project to look in.
+	 * @param scope   The scope to look in.
+	 *
+	 * @return The files.
+	 */
+	@NotNull
+	public static Set<VirtualFile> getFilesWithClassNameStrings (@NotNull Project project, @NotNull final GlobalSearchScope scope)
+	{
+		final PhpClassNameFilter class_name_filter = PhpClassNameFilter.getInstance(project);
+		final Collection<String> class_names       = new ArrayList<String>();
+
+		FileBasedIndex.getInstance().processAllKeys(
+			NAME,
+			new Processor<String>()
+			{
+				public boolean process (String class_name)
+				{
+					if (class_name_filter.mightBeClassName(class_name))
+					{
+						class_names.add(class_name);
+					}
+
+					return true;
+				}
+			},
+			scope,
+			IdFilter.getProjectIdFilter(project, false)
+		);
+
+		Set<VirtualFile> files = new HashSet<VirtualFile>();
+
+		for (String class_name : class_names)
+		{
+			files.addAll(getFilesWithClassNameString(class_name, scope));
+		}
+
+		return files;
+	}
+
+	@NotNull
+	@Override
+	public ID<String, Void> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, Void, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, Void, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, Void> map (@NotNull FileContent input)
+			{
+				CharSequence text = input.getContentAsText();
+
+				// Without PHP code or quotes there can't be any string literals.
+				if (!StringUtil.contains(text, "<?") || (StringUtil.indexOf(text, '\'') < 0 && StringUtil.indexOf(text, '"') < 0))
+				{
+					return Collections.emptyMap();
+				}
+
+				ParserDefinition parser_definition = LanguageParserDefinitions.INSTANCE.forLanguage(PhpLanguage.INSTANCE);
+
+				if (parser_definition == null)
+				{
+					return Collections.emptyMap();
+				}
+
+				Lexer lexer = parser_definition.createLexer(input.getProject());
+				lexer.start(text);
+
+				Map<String, Void> class_names = new HashMap<String, Void>();
+
+				for (IElementType token; (token = lexer.getTokenType()) != null; lexer.advance())
+				{
+					if (token != PhpTokenTypes.STRING_LITERAL && token != PhpTokenTypes.STRING_LITERAL_SINGLE_QUOTE)
+					{
+						continue;
+					}
+
+					String class_name = getClassName(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString());
+
+					if (class_name != null)
+					{
+						class_names.put(normalize(class_name), null);
+					}
+				}
+
+				return class_names;
+			}
+		};
+	}
+
+	/**
+	 * Get the class name from a string literal token, if it looks like one. This accepts every string that the ::class
+	 * intention might accept, so the index is a superset of what it converts.
+	 *
+	 * @param text The text of a string literal token, including quotes.
+	 *
+	 * @return The class name, or NULL if the string doesn't look like a class name.
+	 */
+	protected static String getClassName (String text)
+	{
+		if (text.length() > 1 && (text.charAt(0) == '\'' || text.charAt(0) == '"') && text.charAt(text.length() - 1) == text.charAt(0))
+		{
+			text = text.substring(1, text.length() - 1);
+		}
+
+		return PhpClassNameFilter.isClassNameLike(text) ? text : null;
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == PhpFileType.INSTANCE;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return true;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 2;
+	}
+}
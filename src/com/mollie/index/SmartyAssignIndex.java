@@ -0,0 +1,365 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.index;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.mollie.util.SmartyTemplates;
+import com.jetbrains.php.lang.PhpFileType;
+import com.jetbrains.php.lang.parser.PhpElementTypes;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Indexes the variables PHP code assigns to Smarty templates: $smarty->assign('foo', $value) calls, followed by a
+ * $smarty->display('foo.tpl') or $smarty->fetch('foo.tpl') call in the same function. This is a template index (see
+ * SmartyTemplates): the data of a template maps variable names to a cheaply inferred type, or an empty string if the
+ * type isn't obvious from the code.
+ */
+public class SmartyAssignIndex extends FileBasedIndexExtension<String, Map<String, Map<String, String>>>
+{
+	public static final ID<String, Map<String, Map<String, String>>> NAME = ID.create("com.mollie.smarty.assign");
+
+	protected static final String ASSIGN_METHOD = "assign";
+
+	protected static final String[] RENDER_METHODS = {"display", "fetch"};
+
+	@NotNull
+	@Override
+	public ID<String, Map<String, Map<String, String>>> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, Map<String, Map<String, String>>, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, Map<String, Map<String, String>>, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, Map<String, Map<String, String>>> map (@NotNull FileContent input)
+			{
+				// Cheap text check first, so we only build a PSI tree for files that might assign template variables. PHP
+				// method names are case insensitive.
+				CharSequence text = input.getContentAsText();
+
+				if (StringUtil.indexOfIgnoreCase(text, ASSIGN_METHOD, 0) < 0
+					|| (StringUtil.indexOfIgnoreCase(text, RENDER_METHODS[0], 0) < 0 && StringUtil.indexOfIgnoreCase(text, RENDER_METHODS[1], 0) < 0))
+				{
+					return Collections.emptyMap();
+				}
+
+				PsiFile file = input.getPsiFile();
+
+				if (!(file instanceof PhpFile))
+				{
+					return Collections.emptyMap();
+				}
+
+				// Group the calls by the function they're in; code outside of functions is grouped by file.
+				Map<PsiElement, Map<String, String>> variables_by_scope = new HashMap<PsiElement, Map<String, String>>();
+				Map<PsiElement, Collection<String>> templates_by_scope  = new HashMap<PsiElement, Collection<String>>();
+
+				for (MethodReference call : PsiTreeUtil.findChildrenOfType(file, MethodReference.class))
+				{
+					String method_name = call.getName();
+
+					if (method_name == null)
+					{
+						continue;
+					}
+
+					PsiElement[] parameters = call.getParameters();
+					PsiElement scope        = getScope(call, file);
+
+					if (method_name.equalsIgnoreCase(ASSIGN_METHOD) && parameters.length > 0)
+					{
+						Map<String, String> variables = variables_by_scope.get(scope);
+
+						if (variables == null)
+						{
+							variables = new HashMap<String, String>();
+							variables_by_scope.put(scope, variables);
+						}
+
+						addAssignedVariables(parameters, variables);
+					}
+					else if (isRenderMethod(method_name) && parameters.length > 0 && parameters[0] instanceof StringLiteralExpression)
+					{
+						String template = SmartyTemplates.normalize(((StringLiteralExpression) parameters[0]).getContents());
+
+						if (template.length() == 0)
+						{
+							continue;
+						}
+
+						Collection<String> templates = templates_by_scope.get(scope);
+
+						if (templates == null)
+						{
+							templates = new ArrayList<String>();
+							templates_by_scope.put(scope, templates);
+						}
+
+						templates.add(template);
+					}
+				}
+
+				Map<String, Map<String, String>> variables_by_template = new HashMap<String, Map<String, String>>();
+
+				for (Map.Entry<PsiElement, Collection<String>> entry : templates_by_scope.entrySet())
+				{
+					Map<String, String> variables = variables_by_scope.get(entry.getKey());
+
+					if (variables == null)
+					{
+						continue;
+					}
+
+					for (String template : entry.getValue())
+					{
+						Map<String, String> template_variables = variables_by_template.get(template);
+
+						if (template_variables == null)
+						{
+							template_variables = new HashMap<String, String>();
+							variables_by_template.put(template, template_variables);
+						}
+
+						template_variables.putAll(variables);
+					}
+				}
+
+				return SmartyTemplates.groupByKey(variables_by_template);
+			}
+		};
+	}
+
+	/**
+	 * Get the function a call is in, or the file if it's not in a function.
+	 *
+	 * @param call The call.
+	 * @param file The file the call is in.
+	 *
+	 * @return The function or file.
+	 */
+	@NotNull
+	protected static PsiElement getScope (@NotNull PsiElement call, @NotNull PsiFile file)
+	{
+		Function function = PsiTreeUtil.getParentOfType(call, Function.class);
+
+		return function == null ? file : function;
+	}
+
+	/**
+	 * Check if a method renders a template.
+	 *
+	 * @param method_name The method name.
+	 *
+	 * @return Whether the method is display() or fetch().
+	 */
+	protected static boolean isRenderMethod (@NotNull String method_name)
+	{
+		for (String render_method : RENDER_METHODS)
+		{
+			if (render_method.equalsIgnoreCase(method_name))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Add the variables assigned by an assign() call, either assign('foo', $value) or assign(array('foo' => $value)).
+	 *
+	 * @param parameters The parameters of the call.
+	 * @param variables  Map of variable names to types to add to.
+	 */
+	protected static void addAssignedVariables (@NotNull PsiElement[] parameters, @NotNull Map<String, String> variables)
+	{
+		if (parameters[0] instanceof StringLiteralExpression)
+		{
+			String name = ((StringLiteralExpression) parameters[0]).getContents();
+
+			if (name.length() > 0)
+			{
+				variables.put(name, getType(parameters.length > 1 ? parameters[1] : null));
+			}
+		}
+		else if (parameters[0] instanceof ArrayCreationExpression)
+		{
+			for (ArrayHashElement element : ((ArrayCreationExpression) parameters[0]).getHashElements())
+			{
+				PsiElement key = element.getKey();
+
+				if (key instanceof StringLiteralExpression && ((StringLiteralExpression) key).getContents().length() > 0)
+				{
+					variables.put(((StringLiteralExpression) key).getContents(), getType(element.getValue()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Infer the type of a value, without resolving anything: indexers can't use other indexes.
+	 *
+	 * @param value The value.
+	 *
+	 * @return The type, or an empty string if it isn't obvious.
+	 */
+	@NotNull
+	protected static String getType (@Nullable PsiElement value)
+	{
+		if (value instanceof StringLiteralExpression)
+		{
+			return "string";
+		}
+
+		if (value instanceof ArrayCreationExpression)
+		{
+			return "array";
+		}
+
+		if (value instanceof NewExpression)
+		{
+			ClassReference class_reference = ((NewExpression) value).getClassReference();
+
+			return class_reference != null && class_reference.getName() != null ? class_reference.getName() : "";
+		}
+
+		if (value instanceof ConstantReference)
+		{
+			String name = ((ConstantReference) value).getName();
+
+			if ("true".equalsIgnoreCase(name) || "false".equalsIgnoreCase(name))
+			{
+				return "bool";
+			}
+
+			if ("null".equalsIgnoreCase(name))
+			{
+				return "null";
+			}
+		}
+
+		if (value != null && value.getNode().getElementType() == PhpElementTypes.NUMBER)
+		{
+			return value.getText().contains(".") ? "float" : "int";
+		}
+
+		return "";
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public DataExternalizer<Map<String, Map<String, String>>> getValueExternalizer ()
+	{
+		return SmartyTemplates.createExternalizer(
+			new DataExternalizer<Map<String, String>>()
+			{
+				@Override
+				public void save (@NotNull DataOutput out, Map<String, String> variables) throws IOException
+				{
+					DataInputOutputUtil.writeINT(out, variables.size());
+
+					for (Map.Entry<String, String> variable : variables.entrySet())
+					{
+						IOUtil.writeUTF(out, variable.getKey());
+						IOUtil.writeUTF(out, variable.getValue());
+					}
+				}
+
+				@Override
+				public Map<String, String> read (@NotNull DataInput in) throws IOException
+				{
+					int size                      = DataInputOutputUtil.readINT(in);
+					Map<String, String> variables = new HashMap<String, String>(size);
+
+					for (int i = 0; i < size; i++)
+					{
+						variables.put(IOUtil.readUTF(in), IOUtil.readUTF(in));
+					}
+
+					return variables;
+				}
+			}
+		);
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == PhpFileType.INSTANCE;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return true;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 3;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.index;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.smarty.SmartyFileType;
+import com.mollie.util.SmartyIncludeScanner;
+import com.mollie.util.SmartyTemplates;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes the templates Smarty templates pull in with {include} or {extends}. This is a template index (see
+ * SmartyTemplates): the data of a template is the names of the variables passed along with the {include}.
+ */
+public class SmartyIncludeIndex extends FileBasedIndexExtension<String, Map<String, Set<String>>>
+{
+	public static final ID<String, Map<String, Set<String>>> NAME = ID.create("com.mollie.smarty.include");
+
+	@NotNull
+	@Override
+	public ID<String, Map<String, Set<String>>> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, Map<String, Set<String>>, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, Map<String, Set<String>>, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, Map<String, Set<String>>> map (@NotNull FileContent input)
+			{
+				return SmartyTemplates.groupByKey(SmartyIncludeScanner.scan(input.getContentAsText(), input.getProject()));
+			}
+		};
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public DataExternalizer<Map<String, Set<String>>> getValueExternalizer ()
+	{
+		return SmartyTemplates.createExternalizer(
+			new DataExternalizer<Set<String>>()
+			{
+				@Override
+				public void save (@NotNull DataOutput out, Set<String> variables) throws IOException
+				{
+					DataInputOutputUtil.writeINT(out, variables.size());
+
+					for (String variable : variables)
+					{
+						IOUtil.writeUTF(out, variable);
+					}
+				}
+
+				@Override
+				public Set<String> read (@NotNull DataInput in) throws IOException
+				{
+					int size              = DataInputOutputUtil.readINT(in);
+					Set<String> variables = new LinkedHashSet<String>(size);
+
+					for (int i = 0; i < size; i++)
+					{
+						variables.add(IOUtil.readUTF(in));
+					}
+
+					return variables;
+				}
+			}
+		);
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == SmartyFileType.INSTANCE;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return true;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 3;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package com.mollie.index;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.php.lang.PhpFileType;
+import com.mollie.util.SmartyPluginFiles;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Indexes Smarty plugin files by their file name ("block.foo.php", "function.foo.php" and "modifier.foo.php"). Keys
+ * are the same as those of SmartyPluginIndex, e.g. "block.foo". Only the file name is looked at, so this never reads
+ * the files' contents.
+ */
+public class SmartyPluginFileIndex extends ScalarIndexExtension<String>
+{
+	public static final ID<String, Void> NAME = ID.create("com.mollie.smarty.plugin.file");
+
+	@NotNull
+	@Override
+	public ID<String, Void> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, Void, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, Void, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, Void> map (@NotNull FileContent input)
+			{
+				String key = SmartyPluginFiles.getKeyForFileName(input.getFileName());
+
+				return key == null ? Collections.<String, Void>emptyMap() : Collections.<String, Void>singletonMap(key, null);
+			}
+		};
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == PhpFileType.INSTANCE && SmartyPluginFiles.getKeyForFileName(file.getName()) != null;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return false;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 1;
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.index;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.php.lang.PhpFileType;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.jetbrains.php.lang.psi.elements.Method;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexes Smarty plugin functions ("smarty_block_foo", "smarty_function_foo" and "smarty_modifier_foo") by plugin type
+ * and name. Keys look like "block.foo", which mirrors the file naming convention Smarty itself uses for plugins.
+ */
+public class SmartyPluginIndex extends ScalarIndexExtension<String>
+{
+	public static final ID<String, Void> NAME = ID.create("com.mollie.smarty.plugin");
+
+	public static final String[] PLUGIN_TYPES = {"block", "function", "modifier"};
+
+	protected static final String FUNCTION_PREFIX = "smarty_";
+
+	/**
+	 * Get the index key for a plugin.
+	 *
+	 * @param type The type of Smarty plugin ("block", "function" or "modifier").
+	 * @param name The name of the plugin, without the "smarty_*_" part.
+	 *
+	 * @return The index key.
+	 */
+	@NotNull
+	public static String getKey (String type, String name)
+	{
+		return type + "." + name;
+	}
+
+	/**
+	 * Get the index key for a PHP function name, if the function is a Smarty plugin.
+	 *
+	 * @param function_name The PHP function name, e.g. "smarty_block_foo".
+	 *
+	 * @return The index key, or NULL if the function isn't a Smarty plugin.
+	 */
+	@Nullable
+	public static String getKeyForFunctionName (String function_name)
+	{
+		if (function_name == null || !StringUtil.startsWithIgnoreCase(function_name, FUNCTION_PREFIX))
+		{
+			return null;
+		}
+
+		for (String type : PLUGIN_TYPES)
+		{
+			String smarty_prefix = FUNCTION_PREFIX + type + "_";
+
+			if (function_name.length() > smarty_prefix.length() && StringUtil.startsWithIgnoreCase(function_name, smarty_prefix))
+			{
+				return getKey(type, function_name.substring(smarty_prefix.length()));
+			}
+		}
+
+		return null;
+	}
+
+	@NotNull
+	@Override
+	public ID<String, Void> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, Void, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, Void, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, Void> map (@NotNull FileContent input)
+			{
+				// Cheap text check first, so we only build a PSI tree for files that might contain plugins. PHP function
+				// names are case insensitive, and so is the key lookup.
+				if (StringUtil.indexOfIgnoreCase(input.getContentAsText(), FUNCTION_PREFIX, 0) < 0)
+				{
+					return Collections.emptyMap();
+				}
+
+				PsiFile file = input.getPsiFile();
+
+				if (!(file instanceof PhpFile))
+				{
+					return Collections.emptyMap();
+				}
+
+				Map<String, Void> plugins = new HashMap<String, Void>();
+
+				for (Function function : PsiTreeUtil.findChildrenOfType(file, Function.class))
+				{
+					// Smarty plugins are always regular functions.
+					if (function instanceof Method)
+					{
+						continue;
+					}
+
+					String key = getKeyForFunctionName(function.getName());
+
+					if (key != null)
+					{
+						plugins.put(key, null);
+					}
+				}
+
+				return plugins;
+			}
+		};
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == PhpFileType.INSTANCE;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return true;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 2;
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.index;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.jetbrains.php.lang.PhpFileType;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.MethodReference;
+import com.jetbrains.php.lang.psi.elements.StringLiteralExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes Smarty plugins that are registered at runtime, e.g. $smarty->registerPlugin('modifier', 'foo', 'callback').
+ * Keys are the same as in SmartyPluginIndex ("modifier.foo"), values are the callback as written in the code.
+ */
+public class SmartyRegisteredPluginIndex extends FileBasedIndexExtension<String, String>
+{
+	public static final ID<String, String> NAME = ID.create("com.mollie.smarty.registered.plugin");
+
+	protected static final String METHOD_NAME = "registerPlugin";
+
+	protected static final int MAX_CALLBACK_LENGTH = 100;
+
+	/**
+	 * Get the callbacks a plugin was registered with.
+	 *
+	 * @param type  The type of Smarty plugin ("block", "function" or "modifier").
+	 * @param name  The name of the plugin.
+	 * @param scope The scope to look in.
+	 *
+	 * @return The callbacks, e.g. "smarty_foo" or "array('Foo','bar')".
+	 */
+	@NotNull
+	public static List<String> getCallbacks (String type, String name, @NotNull GlobalSearchScope scope)
+	{
+		return FileBasedIndex.getInstance().getValues(NAME, SmartyPluginIndex.getKey(type, name), scope);
+	}
+
+	@NotNull
+	@Override
+	public ID<String, String> getName ()
+	{
+		return NAME;
+	}
+
+	@NotNull
+	@Override
+	public DataIndexer<String, String, FileContent> getIndexer ()
+	{
+		return new DataIndexer<String, String, FileContent>()
+		{
+			@NotNull
+			@Override
+			public Map<String, String> map (@NotNull FileContent input)
+			{
+				// Cheap text check first, so we only build a PSI tree for files that might register plugins. PHP method
+				// names are case insensitive.
+				if (StringUtil.indexOfIgnoreCase(input.getContentAsText(), METHOD_NAME, 0) < 0)
+				{
+					return Collections.emptyMap();
+				}
+
+				PsiFile file = input.getPsiFile();
+
+				if (!(file instanceof PhpFile))
+				{
+					return Collections.emptyMap();
+				}
+
+				Map<String, String> plugins = new HashMap<String, String>();
+
+				for (MethodReference call : PsiTreeUtil.findChildrenOfType(file, MethodReference.class))
+				{
+					if (!METHOD_NAME.equalsIgnoreCase(call.getName()))
+					{
+						continue;
+					}
+
+					PsiElement[] parameters = call.getParameters();
+
+					if (parameters.length < 3 || !(parameters[0] instanceof StringLiteralExpression) || !(parameters[1] instanceof StringLiteralExpression))
+					{
+						continue;
+					}
+
+					String type = ((StringLiteralExpression) parameters[0]).getContents().toLowerCase();
+					String name = ((StringLiteralExpression) parameters[1]).getContents();
+
+					if (name.length() > 0 && isPluginType(type))
+					{
+						plugins.put(SmartyPluginIndex.getKey(type, name), getCallback(parameters[2]));
+					}
+				}
+
+				return plugins;
+			}
+		};
+	}
+
+	/**
+	 * Check if a plugin type is one we know about.
+	 *
+	 * @param type The lowercase plugin type.
+	 *
+	 * @return Whether the type is a known plugin type.
+	 */
+	protected static boolean isPluginType (@NotNull String type)
+	{
+		for (String plugin_type : SmartyPluginIndex.PLUGIN_TYPES)
+		{
+			if (plugin_type.equals(type))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Get a short description of the callback a plugin is registered with: the function name for string callbacks,
+	 * or the code without whitespace for anything else.
+	 *
+	 * @param parameter The callback parameter.
+	 *
+	 * @return The callback.
+	 */
+	@NotNull
+	protected static String getCallback (@Nullable PsiElement parameter)
+	{
+		if (parameter instanceof StringLiteralExpression)
+		{
+			return ((StringLiteralExpression) parameter).getContents();
+		}
+
+		if (parameter == null)
+		{
+			return "";
+		}
+
+		return StringUtil.first(parameter.getText().replaceAll("\\s+", ""), MAX_CALLBACK_LENGTH, true);
+	}
+
+	@NotNull
+	@Override
+	public KeyDescriptor<String> getKeyDescriptor ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public DataExternalizer<String> getValueExternalizer ()
+	{
+		return new EnumeratorStringDescriptor();
+	}
+
+	@NotNull
+	@Override
+	public FileBasedIndex.InputFilter getInputFilter ()
+	{
+		return new FileBasedIndex.InputFilter()
+		{
+			@Override
+			public boolean acceptInput (@NotNull VirtualFile file)
+			{
+				return file.getFileType() == PhpFileType.INSTANCE;
+			}
+		};
+	}
+
+	@Override
+	public boolean dependsOnFileContent ()
+	{
+		return true;
+	}
+
+	@Override
+	public int getVersion ()
+	{
+		return 3;
+	}
+}
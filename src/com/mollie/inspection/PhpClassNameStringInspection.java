@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.inspection;
+
+import com.intellij.codeInspection.LocalInspectionTool;
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementVisitor;
+import com.jetbrains.php.lang.psi.elements.StringLiteralExpression;
+import com.jetbrains.php.lang.psi.visitors.PhpElementVisitor;
+import com.mollie.intention.PhpReplaceClassNameStringWithClassKeyword;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reports class name strings that can be replaced with the PHP 5.5 ::class notation. Uses the same checks as the
+ * "Convert to ::class" intention, and can be run as a code cleanup.
+ */
+public class PhpClassNameStringInspection extends LocalInspectionTool
+{
+	/**
+	 * Create a visitor that looks at every string literal in a PHP file.
+	 *
+	 * @param holder     The holder to register problems with.
+	 * @param isOnTheFly True if the inspection runs in the editor.
+	 *
+	 * @return The visitor.
+	 */
+	@NotNull
+	@Override
+	public PsiElementVisitor buildVisitor (@NotNull final ProblemsHolder holder, boolean isOnTheFly)
+	{
+		return new PhpElementVisitor()
+		{
+			@Override
+			public void visitPhpStringLiteralExpression (StringLiteralExpression expression)
+			{
+				if (PhpReplaceClassNameStringWithClassKeyword.isClassNameString(holder.getProject(), expression.getFirstChild()))
+				{
+					holder.registerProblem(
+						expression,
+						"Class name string can be replaced with ::class",
+						ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
+						new ReplaceWithClassKeywordFix()
+					);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Quick fix that replaces the class name string with ::class.
+	 */
+	public static class ReplaceWithClassKeywordFix implements LocalQuickFix
+	{
+		@Nls
+		@NotNull
+		public String getName ()
+		{
+			return "Convert to ::class";
+		}
+
+		@Nls
+		@NotNull
+		public String getFamilyName ()
+		{
+			return getName();
+		}
+
+		public void applyFix (@NotNull Project project, @NotNull ProblemDescriptor descriptor)
+		{
+			PsiElement expression = descriptor.getPsiElement();
+
+			if (expression instanceof StringLiteralExpression && expression.getFirstChild() != null)
+			{
+				PhpReplaceClassNameStringWithClassKeyword.replaceWithClassKeyword(project, expression.getFirstChild());
+			}
+		}
+	}
+}
@@ -39,6 +39,7 @@ import com.jetbrains.php.PhpWorkaroundUtil;
 import com.jetbrains.php.lang.lexer.PhpTokenTypes;
 import com.jetbrains.php.lang.psi.PhpPsiElementFactory;
 import com.jetbrains.php.lang.psi.elements.*;
+import com.mollie.util.PhpClassNameFilter;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -80,6 +81,31 @@ public class PhpReplaceClassNameStringWithClassKeyword extends PsiElementBaseInt
 	 * @return True if we can use the intent, false otherwise.
 	 */
 	public boolean isAvailable (@NotNull Project project, Editor editor, @Nullable PsiElement element)
+	{
+		return isClassNameString(project, element);
+	}
+
+	/**
+	 * The intent is invoked. Do magic.
+	 *
+	 * @param project Current project.
+	 * @param editor  Current editor.
+	 * @param element Element selected by the caret.
+	 */
+	public void invoke (@NotNull Project project, Editor editor, @NotNull PsiElement element) throws IncorrectOperationException
+	{
+		replaceWithClassKeyword(project, element);
+	}
+
+	/**
+	 * Check if an element is the contents of a string literal naming an existing class.
+	 *
+	 * @param project Current project.
+	 * @param element The element to check, e.g. the element selected by the caret.
+	 *
+	 * @return True if the string can be replaced with ::class, false otherwise.
+	 */
+	public static boolean isClassNameString (@NotNull Project project, @Nullable PsiElement element)
 	{
 		if (element == null || !PhpWorkaroundUtil.isIntentionAvailable(element) || element.getParent() == null)
 		{
@@ -102,24 +128,27 @@ public class PhpReplaceClassNameStringWithClassKeyword extends PsiElementBaseInt
 		}
 
 		// Unquote the class string if needed.
-		String class_name  = getUnquotedString(element.getText());
+		String class_name = getUnquotedString(element.getText());
+
+		// Rule out most strings without touching the PHP index.
+		if (!PhpClassNameFilter.getInstance(project).mightBeClassName(class_name))
+		{
+			return false;
+		}
+
 		PhpIndex php_index = PhpIndex.getInstance(project);
 
 		// Look for both regular and namespaced class names.
-		return (
-			class_name.length() > 0
-			&& (php_index.getClassByName(class_name) != null || php_index.getClassesByFQN(class_name).size() > 0)
-		);
+		return php_index.getClassByName(class_name) != null || php_index.getClassesByFQN(class_name).size() > 0;
 	}
 
 	/**
-	 * The intent is invoked. Do magic.
+	 * Replace the string literal containing a class name with a ::class reference.
 	 *
 	 * @param project Current project.
-	 * @param editor  Current editor.
-	 * @param element Element selected by the caret.
+	 * @param element The contents of the string literal.
 	 */
-	public void invoke (@NotNull Project project, Editor editor, @NotNull PsiElement element) throws IncorrectOperationException
+	public static void replaceWithClassKeyword (@NotNull Project project, @NotNull PsiElement element) throws IncorrectOperationException
 	{
 		String class_name = getUnquotedString(element.getText());
 
@@ -145,7 +174,7 @@ public class PhpReplaceClassNameStringWithClassKeyword extends PsiElementBaseInt
 	 *
 	 * @return The unquoted string.
 	 */
-	protected String getUnquotedString (String string)
+	protected static String getUnquotedString (String string)
 	{
 		int string_length = string.length();
 
@@ -31,22 +31,31 @@ import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.patterns.PlatformPatterns;
 import com.intellij.psi.PsiElement;
 import com.intellij.util.ProcessingContext;
-import com.jetbrains.php.completion.insert.PhpInsertHandlerUtil;
+import com.intellij.util.Processor;
 import com.jetbrains.php.lang.psi.elements.*;
 import com.jetbrains.smarty.lang.SmartyTokenTypes;
 import com.jetbrains.smarty.lang.psi.SmartyCompositeElementTypes;
-import com.mollie.icons.SmartyIcons;
+import com.mollie.util.PhpClassInfo;
+import com.mollie.util.PhpConstantInfo;
+import com.mollie.util.PhpFunctionSignature;
 import com.mollie.util.SmartyIndex;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
- * Add Smarty function and generic PHP suggestions.
+ * Add Smarty function and generic PHP suggestions. Works while the project is being indexed as well, using the last
+ * snapshot of plugins and PHP symbols kept by SmartyIndex.
  */
-public class SmartyCompletionContributor extends CompletionContributor
+public class SmartyCompletionContributor extends CompletionContributor implements DumbAware
 {
 	protected static final Logger LOG = Logger.getInstance(SmartyCompletionContributor.class);
 
@@ -68,26 +77,13 @@ public class SmartyCompletionContributor extends CompletionContributor
 					String prefix   = result_set.getPrefixMatcher().getPrefix();
 					Project project = parameters.getPosition().getProject();
 
-					// Suggest block plugins.
-					for (String name : SmartyIndex.getSmartyBlockPluginNames(project, prefix))
-					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(name)
-								.withTypeText("Smarty block")
-								.withIcon(SmartyIcons.SmartyFile)
-						);
-					}
+					SmartyIndex smarty_index             = SmartyIndex.getInstance(project);
+					SmartyLookupElements lookup_elements = SmartyLookupElements.getInstance(project);
 
-					// Suggest function plugins.
-					for (String name : SmartyIndex.getSmartyFunctionPluginNames(project, prefix))
+					// Suggest block plugins, then function plugins.
+					if (smarty_index.processSmartyPluginNames("block", prefix, createPluginProcessor(result_set, lookup_elements, "block")))
 					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(name)
-								.withTypeText("Smarty function")
-								.withIcon(SmartyIcons.SmartyFile)
-						);
+						smarty_index.processSmartyPluginNames("function", prefix, createPluginProcessor(result_set, lookup_elements, "function"));
 					}
 				}
 			}
@@ -122,48 +118,69 @@ public class SmartyCompletionContributor extends CompletionContributor
 			{
 				public void addCompletions(@NotNull CompletionParameters parameters,
 				                           ProcessingContext context,
-				                           @NotNull CompletionResultSet result_set)
+				                           @NotNull final CompletionResultSet result_set)
 				{
 					String prefix   = result_set.getPrefixMatcher().getPrefix();
 					Project project = parameters.getPosition().getProject();
 
-					// Suggest PHP functions.
-					for (Function function : SmartyIndex.getPHPFunctions(project, prefix))
-					{
-						result_set.addElement(createLookupElementForFunction(function));
-					}
+					SmartyIndex smarty_index                   = SmartyIndex.getInstance(project);
+					final SmartyLookupElements lookup_elements = SmartyLookupElements.getInstance(project);
+
+					// Suggest PHP functions. The functions themselves are only resolved for the items that are shown.
+					boolean is_active = smarty_index.processPHPFunctionNames(
+						prefix,
+						new Processor<String>()
+						{
+							public boolean process (String function_name)
+							{
+								return addElement(result_set, lookup_elements.getFunctionElement(function_name));
+							}
+						}
+					);
 
 					// Suggest PHP classes.
-					for (PhpClass php_class : SmartyIndex.getPHPClasses(project, prefix))
-					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(php_class.getName())
-								.withIcon(php_class.getIcon())
-								.withTypeText(php_class.getName())
-								.withInsertHandler(createInsertHandler("::"))
-						);
-					}
+					is_active = is_active && smarty_index.processPHPClasses(
+						prefix,
+						new Processor<PhpClassInfo>()
+						{
+							public boolean process (PhpClassInfo class_info)
+							{
+								return addElement(result_set, lookup_elements.getClassElement(class_info));
+							}
+						}
+					);
 
 					// Suggest PHP constants.
-					for (Constant php_constant : SmartyIndex.getPHPConstants(project, prefix))
+					is_active = is_active && smarty_index.processPHPConstants(
+						prefix,
+						new Processor<PhpConstantInfo>()
+						{
+							public boolean process (PhpConstantInfo constant_info)
+							{
+								return addElement(result_set, lookup_elements.getConstantElement(constant_info));
+							}
+						}
+					);
+
+					// Suggest variables in the current Smarty file and the templates that include it.
+					if (is_active)
 					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(php_constant.getName())
-								.withIcon(php_constant.getIcon())
-								.withTypeText(php_constant.getType().toStringResolved())
-						);
-					}
-
-					// Suggest variables in the current Smarty file.
-					for (String variable : SmartyIndex.getSmartyVariables(parameters.getEditor(), parameters.getOriginalFile()))
-					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create("$" + variable)
-								.withIcon(AllIcons.Nodes.Variable)
-								.withTypeText("variable")
+						smarty_index.processSmartyVariables(
+							parameters.getEditor(),
+							parameters.getOriginalFile(),
+							new Processor<String>()
+							{
+								public boolean process (String variable)
+								{
+									return addElement(
+										result_set,
+										LookupElementBuilder
+											.create("$" + variable)
+											.withIcon(AllIcons.Nodes.Variable)
+											.withTypeText("variable")
+									);
+								}
+							}
 						);
 					}
 				}
@@ -178,17 +195,58 @@ public class SmartyCompletionContributor extends CompletionContributor
 			{
 				public void addCompletions(@NotNull CompletionParameters parameters,
 				                           ProcessingContext context,
-				                           @NotNull CompletionResultSet result_set)
+				                           @NotNull final CompletionResultSet result_set)
 				{
-					// Suggest variables in the current Smarty file.
-					for (String variable : SmartyIndex.getSmartyVariables(parameters.getEditor(), parameters.getOriginalFile()))
+					Project project          = parameters.getPosition().getProject();
+					SmartyIndex smarty_index = SmartyIndex.getInstance(project);
+					final Set<String> seen   = new HashSet<String>();
+
+					// Suggest variables in the current Smarty file and the templates that include it.
+					boolean is_active = smarty_index.processSmartyVariables(
+						parameters.getEditor(),
+						parameters.getOriginalFile(),
+						new Processor<String>()
+						{
+							public boolean process (String variable)
+							{
+								seen.add(variable);
+
+								return addElement(
+									result_set,
+									LookupElementBuilder
+										.create(variable) // No prefix, since we already typed the $.
+										.withTypeText("variable")
+										.withIcon(AllIcons.Nodes.Variable)
+								);
+							}
+						}
+					);
+
+					// Suggest variables assigned to this Smarty file by PHP code.
+					if (is_active)
 					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(variable) // No prefix, since we already typed the $.
-								.withTypeText("variable")
-								.withIcon(AllIcons.Nodes.Variable)
-						);
+						for (Map.Entry<String, String> variable : smarty_index.getAssignedVariables(parameters.getOriginalFile()).entrySet())
+						{
+							if (seen.contains(variable.getKey()))
+							{
+								continue;
+							}
+
+							String type = variable.getValue();
+
+							boolean is_added = addElement(
+								result_set,
+								LookupElementBuilder
+									.create(variable.getKey())
+									.withTypeText(type.length() > 0 ? type : "variable")
+									.withIcon(AllIcons.Nodes.Variable)
+							);
+
+							if (!is_added)
+							{
+								break;
+							}
+						}
 					}
 				}
 			}
@@ -204,8 +262,14 @@ public class SmartyCompletionContributor extends CompletionContributor
 				                           ProcessingContext context,
 				                           @NotNull CompletionResultSet result_set)
 				{
-					Project project            = parameters.getPosition().getProject();
 					PsiElement current_element = parameters.getPosition();
+					SmartyIndex smarty_index   = SmartyIndex.getInstance(current_element.getProject());
+
+					// Class members aren't in the snapshot, so there's nothing to suggest while indexing.
+					if (smarty_index.isDumb())
+					{
+						return;
+					}
 
 					// Find double colon and class name.
 					if (current_element.getPrevSibling() == null || current_element.getPrevSibling().getPrevSibling() == null)
@@ -215,7 +279,7 @@ public class SmartyCompletionContributor extends CompletionContributor
 
 					// Find class name reference.
 					String class_name  = current_element.getPrevSibling().getPrevSibling().getText();
-					PhpClass php_class = SmartyIndex.getPHPClassByName(project, class_name);
+					PhpClass php_class = smarty_index.getPHPClassByName(class_name);
 
 					if (php_class == null)
 					{
@@ -226,20 +290,29 @@ public class SmartyCompletionContributor extends CompletionContributor
 					result_set.addElement(LookupElementBuilder.create("class"));
 
 					// Suggest static class methods.
-					for (Method method : SmartyIndex.getStaticMethodsOfPHPClass(php_class))
+					for (Method method : smarty_index.getStaticMethodsOfPHPClass(php_class))
 					{
-						result_set.addElement(createLookupElementForFunction(method));
+						if (!addElement(result_set, createLookupElementForFunction(method)))
+						{
+							return;
+						}
 					}
 
 					// Suggest class constants.
-					for (Field field : SmartyIndex.getConstantsOfPHPClass(php_class))
+					for (Field field : smarty_index.getConstantsOfPHPClass(php_class))
 					{
-						result_set.addElement(
+						boolean is_active = addElement(
+							result_set,
 							LookupElementBuilder
 								.create(field.getName())
 								.withIcon(field.getIcon())
 								.withTypeText(field.getType().toStringResolved())
 						);
+
+						if (!is_active)
+						{
+							return;
+						}
 					}
 				}
 			}
@@ -261,15 +334,7 @@ public class SmartyCompletionContributor extends CompletionContributor
 					Project project = parameters.getPosition().getProject();
 
 					// Suggest modifier plugins.
-					for (String name : SmartyIndex.getSmartyModifierPluginNames(project, prefix))
-					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(name)
-								.withTypeText("Smarty modifier")
-								.withIcon(SmartyIcons.SmartyFile)
-						);
-					}
+					SmartyIndex.getInstance(project).processSmartyPluginNames("modifier", prefix, createPluginProcessor(result_set, SmartyLookupElements.getInstance(project), "modifier"));
 				}
 			}
 		);
@@ -288,56 +353,52 @@ public class SmartyCompletionContributor extends CompletionContributor
 					Project project = parameters.getPosition().getProject();
 
 					// Suggest block plugins.
-					for (String name : SmartyIndex.getSmartyBlockPluginNames(project, prefix))
-					{
-						result_set.addElement(
-							LookupElementBuilder
-								.create(name)
-								.withTypeText("Smarty block")
-								.withIcon(SmartyIcons.SmartyFile)
-						);
-					}
+					SmartyIndex.getInstance(project).processSmartyPluginNames("block", prefix, createPluginProcessor(result_set, SmartyLookupElements.getInstance(project), "block"));
 				}
 			}
 		);
 	}
 
 	/**
-	 * Insert a string before and after the caret.
+	 * Add a LookupElement to the result set, so it's shown right away.
 	 *
-	 * @param prepend The string to insert before the caret's position.
-	 * @param append  The string to insert after the caret's position.
+	 * @param result_set The result set to add the element to.
+	 * @param element    The element to add.
 	 *
-	 * @return An InsertHandler object.
+	 * @return False if the lookup was cancelled or closed and no more elements should be added, true otherwise.
 	 */
-	protected BasicInsertHandler<LookupElement> createInsertHandler (final String prepend, final String append)
+	protected static boolean addElement (CompletionResultSet result_set, LookupElement element)
 	{
-		return new BasicInsertHandler<LookupElement> ()
-		{
-			@Override
-			public void handleInsert (InsertionContext context, LookupElement element)
-			{
-				PhpInsertHandlerUtil.insertStringAtCaret(context.getEditor(), prepend);
-				context.getDocument().insertString(context.getTailOffset(), append);
-			}
-		};
+		ProgressManager.checkCanceled();
+
+		result_set.addElement(element);
+
+		return !result_set.isStopped();
 	}
 
 	/**
-	 * Insert a string before the caret.
+	 * Create a processor that adds Smarty plugin names to a result set.
 	 *
-	 * @param prepend The string to insert before the caret's position.
+	 * @param result_set      The result set to add the plugins to.
+	 * @param lookup_elements The cache to get the plugins' LookupElements from.
+	 * @param type            The type of Smarty plugin ("block", "function" or "modifier").
 	 *
-	 * @return An InsertHandler object.
+	 * @return A Processor.
 	 */
-	protected BasicInsertHandler<LookupElement> createInsertHandler (final String prepend)
+	protected Processor<String> createPluginProcessor (final CompletionResultSet result_set, final SmartyLookupElements lookup_elements, final String type)
 	{
-		return createInsertHandler(prepend, "");
+		return new Processor<String>()
+		{
+			public boolean process (String name)
+			{
+				return addElement(result_set, lookup_elements.getPluginElement(type, name));
+			}
+		};
 	}
 
 	/**
-	 * Create a LookupElement for a PHP function or method. This automatically generates the parameter list (resource
-	 * heavy).
+	 * Create a LookupElement for a PHP function or method. This automatically generates the parameter list (cached
+	 * until the function's file changes).
 	 *
 	 * @param php_function The function to create a LookupElement for.
 	 *
@@ -345,55 +406,13 @@ public class SmartyCompletionContributor extends CompletionContributor
 	 */
 	protected LookupElement createLookupElementForFunction (Function php_function)
 	{
-		// Create the parameter string.
-		String tail_text = "(";
-
-		for (Parameter parameter : php_function.getParameters())
-		{
-			if (!tail_text.equals("("))
-			{
-				tail_text += ", ";
-			}
-
-			if (parameter.isOptional())
-			{
-				tail_text += "[";
-			}
-
-			if (parameter.isPassByRef())
-			{
-				tail_text += "&";
-			}
-
-			tail_text += parameter.getName();
-
-			String declared_type = parameter.getDeclaredType().toStringResolved();
-
-			if (declared_type.length() > 0)
-			{
-				tail_text += " : " + declared_type;
-			}
-
-			if (parameter.isOptional())
-			{
-				PsiElement default_value = parameter.getDefaultValue();
-
-				if (default_value != null)
-				{
-					tail_text += " = " + default_value.getText();
-				}
-
-				tail_text += "]";
-			}
-		}
-
-		tail_text += ")";
+		PhpFunctionSignature signature = PhpFunctionSignature.of(php_function);
 
 		return LookupElementBuilder
 			.create(php_function.getName())
 			.withIcon(php_function.getIcon())
-			.withTailText(tail_text, true)
-			.withTypeText(php_function.getType().toStringResolved())
-			.withInsertHandler(createInsertHandler("(", ")"));
+			.withTailText(signature.getTailText(), true)
+			.withTypeText(signature.getTypeText())
+			.withInsertHandler(SmartyLookupElements.PARENTHESES_INSERT_HANDLER);
 	}
 }
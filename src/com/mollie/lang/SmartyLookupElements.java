@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.lang;
+
+import com.intellij.codeInsight.completion.BasicInsertHandler;
+import com.intellij.codeInsight.completion.InsertHandler;
+import com.intellij.codeInsight.completion.InsertionContext;
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.codeInsight.lookup.LookupElementPresentation;
+import com.intellij.codeInsight.lookup.LookupElementRenderer;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.jetbrains.php.completion.insert.PhpInsertHandlerUtil;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.mollie.icons.SmartyIcons;
+import com.mollie.util.PhpClassInfo;
+import com.mollie.util.PhpConstantInfo;
+import com.mollie.util.PhpFunctionSignature;
+import com.mollie.util.SmartyIndex;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Project service that hands out LookupElements for Smarty plugins and PHP symbols. LookupElements hold user data that
+ * belongs to a single completion session, so a fresh element is built every time. Building one is cheap: the class and
+ * constant infos are cached by SmartyIndex, and insert handlers and renderers are shared by all elements.
+ */
+public class SmartyLookupElements
+{
+	/**
+	 * Insert parentheses after a function name, with the caret in between.
+	 */
+	public static final InsertHandler<LookupElement> PARENTHESES_INSERT_HANDLER = createInsertHandler("(", ")");
+
+	/**
+	 * Insert the fully qualified name of a namespaced class, followed by a double colon. Expects a PhpClassInfo as the
+	 * element's object.
+	 */
+	public static final InsertHandler<LookupElement> CLASS_INSERT_HANDLER = new BasicInsertHandler<LookupElement> ()
+	{
+		@Override
+		public void handleInsert (InsertionContext context, LookupElement element)
+		{
+			Object object = element.getObject();
+
+			if (object instanceof PhpClassInfo && ((PhpClassInfo) object).getNamespace().length() > 0)
+			{
+				String fqn = ((PhpClassInfo) object).getFQN();
+
+				context.getDocument().replaceString(context.getStartOffset(), context.getTailOffset(), fqn);
+				context.getEditor().getCaretModel().moveToOffset(context.getStartOffset() + fqn.length());
+			}
+
+			PhpInsertHandlerUtil.insertStringAtCaret(context.getEditor(), "::");
+		}
+	};
+
+	protected final LookupElementRenderer<LookupElement> function_renderer;
+
+	/**
+	 * @param project The project to suggest symbols from.
+	 */
+	public SmartyLookupElements (Project project)
+	{
+		function_renderer = createFunctionRenderer(project);
+	}
+
+	public static SmartyLookupElements getInstance (@NotNull Project project)
+	{
+		return ServiceManager.getService(project, SmartyLookupElements.class);
+	}
+
+	/**
+	 * Get the LookupElement for a Smarty plugin.
+	 *
+	 * @param type The type of Smarty plugin ("block", "function" or "modifier").
+	 * @param name The name of the plugin.
+	 *
+	 * @return The LookupElement.
+	 */
+	@NotNull
+	public LookupElement getPluginElement (String type, String name)
+	{
+		return LookupElementBuilder
+			.create(name)
+			.withTypeText("Smarty " + type)
+			.withIcon(SmartyIcons.SmartyFile);
+	}
+
+	/**
+	 * Get the LookupElement for a PHP function. The function itself is only resolved when the element is rendered, so
+	 * only for the elements that are actually shown.
+	 *
+	 * @param function_name The name of the function.
+	 *
+	 * @return The LookupElement.
+	 */
+	@NotNull
+	public LookupElement getFunctionElement (String function_name)
+	{
+		return LookupElementBuilder
+			.create(function_name)
+			.withRenderer(function_renderer)
+			.withInsertHandler(PARENTHESES_INSERT_HANDLER);
+	}
+
+	/**
+	 * Get the LookupElement for a PHP class. Namespaced classes are inserted by their fully qualified name.
+	 *
+	 * @param class_info The class.
+	 *
+	 * @return The LookupElement.
+	 */
+	@NotNull
+	public LookupElement getClassElement (PhpClassInfo class_info)
+	{
+		String namespace = class_info.getNamespace();
+
+		return LookupElementBuilder
+			.create(class_info, class_info.getName())
+			.withLookupString(class_info.getFQN().substring(1))
+			.withIcon(class_info.getIcon())
+			.withTailText(namespace.length() > 0 ? " (" + namespace + ")" : "", true)
+			.withTypeText(class_info.getKind())
+			.withInsertHandler(CLASS_INSERT_HANDLER);
+	}
+
+	/**
+	 * Get the LookupElement for a PHP constant.
+	 *
+	 * @param constant_info The constant.
+	 *
+	 * @return The LookupElement.
+	 */
+	@NotNull
+	public LookupElement getConstantElement (PhpConstantInfo constant_info)
+	{
+		String value = constant_info.getValueText();
+
+		return LookupElementBuilder
+			.create(constant_info.getName())
+			.withIcon(constant_info.getIcon())
+			.withTailText(value.length() > 0 ? " = " + value : "", true)
+			.withTypeText(constant_info.getTypeText());
+	}
+
+	/**
+	 * Insert a string before and after the caret.
+	 *
+	 * @param prepend The string to insert before the caret's position.
+	 * @param append  The string to insert after the caret's position.
+	 *
+	 * @return An InsertHandler object.
+	 */
+	protected static BasicInsertHandler<LookupElement> createInsertHandler (final String prepend, final String append)
+	{
+		return new BasicInsertHandler<LookupElement> ()
+		{
+			@Override
+			public void handleInsert (InsertionContext context, LookupElement element)
+			{
+				PhpInsertHandlerUtil.insertStringAtCaret(context.getEditor(), prepend);
+				context.getDocument().insertString(context.getTailOffset(), append);
+			}
+		};
+	}
+
+	/**
+	 * Create a renderer for LookupElements that only carry the name of a PHP function. The function is resolved when
+	 * the element is rendered.
+	 *
+	 * @param project The project to resolve the functions in.
+	 *
+	 * @return A LookupElementRenderer.
+	 */
+	protected static LookupElementRenderer<LookupElement> createFunctionRenderer (final Project project)
+	{
+		return new LookupElementRenderer<LookupElement>()
+		{
+			@Override
+			public void renderElement (LookupElement element, LookupElementPresentation presentation)
+			{
+				presentation.setItemText(element.getLookupString());
+
+				SmartyIndex smarty_index = SmartyIndex.getInstance(project);
+
+				// Functions can't be resolved while the project is being indexed; just show the name.
+				if (smarty_index.isDumb())
+				{
+					return;
+				}
+
+				Function php_function = smarty_index.getCustomPHPFunctionByName(element.getLookupString());
+
+				if (php_function != null)
+				{
+					PhpFunctionSignature signature = PhpFunctionSignature.of(php_function);
+
+					presentation.setIcon(php_function.getIcon());
+					presentation.setTailText(signature.getTailText(), true);
+					presentation.setTypeText(signature.getTypeText());
+				}
+			}
+		};
+	}
+}
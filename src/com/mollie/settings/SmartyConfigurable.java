@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.settings;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.components.JBScrollPane;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings page for the Smarty settings of a project.
+ */
+public class SmartyConfigurable implements Configurable
+{
+	protected final Project project;
+
+	protected JTextArea plugin_dirs_field;
+
+	/**
+	 * @param project The project to edit the settings of.
+	 */
+	public SmartyConfigurable (Project project)
+	{
+		this.project = project;
+	}
+
+	@Nls
+	@Override
+	public String getDisplayName ()
+	{
+		return "Smarty (Mollie)";
+	}
+
+	@Nullable
+	@Override
+	public String getHelpTopic ()
+	{
+		return null;
+	}
+
+	@Nullable
+	@Override
+	public JComponent createComponent ()
+	{
+		plugin_dirs_field = new JTextArea(5, 40);
+
+		JPanel panel = new JPanel(new BorderLayout(0, 4));
+		panel.add(new JLabel("<html>Smarty plugin directories, one per line (relative to the project directory, or absolute).<br>Leave empty to find plugin files anywhere in the project.</html>"), BorderLayout.NORTH);
+		panel.add(new JBScrollPane(plugin_dirs_field), BorderLayout.CENTER);
+
+		JPanel wrapper = new JPanel(new BorderLayout());
+		wrapper.add(panel, BorderLayout.NORTH);
+
+		return wrapper;
+	}
+
+	@Override
+	public boolean isModified ()
+	{
+		return plugin_dirs_field != null && !getPluginDirs().equals(SmartySettings.getInstance(project).getPluginDirs());
+	}
+
+	@Override
+	public void apply ()
+	{
+		SmartySettings.getInstance(project).setPluginDirs(getPluginDirs());
+	}
+
+	@Override
+	public void reset ()
+	{
+		plugin_dirs_field.setText(StringUtil.join(SmartySettings.getInstance(project).getPluginDirs(), "\n"));
+	}
+
+	@Override
+	public void disposeUIResources ()
+	{
+		plugin_dirs_field = null;
+	}
+
+	/**
+	 * @return The non-empty lines of the plugin directories field.
+	 */
+	@NotNull
+	protected List<String> getPluginDirs ()
+	{
+		List<String> plugin_dirs = new ArrayList<String>();
+
+		for (String line : StringUtil.splitByLines(plugin_dirs_field.getText()))
+		{
+			if (line.trim().length() > 0)
+			{
+				plugin_dirs.add(line.trim());
+			}
+		}
+
+		return plugin_dirs;
+	}
+}
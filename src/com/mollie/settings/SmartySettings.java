@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.settings;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Project service holding the Smarty settings of a project, edited in Settings > Tools > Smarty (Mollie). Also counts
+ * changes to the settings, so caches that depend on them can use it as a dependency.
+ */
+@State(name = "MollieSmartySettings", storages = @Storage("mollie-smarty.xml"))
+public class SmartySettings extends SimpleModificationTracker implements PersistentStateComponent<SmartySettings.SettingsState>
+{
+	/**
+	 * The persisted settings.
+	 */
+	public static class SettingsState
+	{
+		// Directories to look for plugin files in, relative to the project's base directory or absolute. Empty means
+		// anywhere in the project.
+		public List<String> plugin_dirs = new ArrayList<String>();
+	}
+
+	protected SettingsState state = new SettingsState();
+
+	/**
+	 * Get the SmartySettings of a project.
+	 *
+	 * @param project The project to look in.
+	 *
+	 * @return The SmartySettings service.
+	 */
+	public static SmartySettings getInstance (@NotNull Project project)
+	{
+		return ServiceManager.getService(project, SmartySettings.class);
+	}
+
+	@Override
+	public SettingsState getState ()
+	{
+		return state;
+	}
+
+	@Override
+	public void loadState (@NotNull SettingsState state)
+	{
+		this.state = state;
+		incModificationCount();
+	}
+
+	/**
+	 * @return Unmodifiable list of the configured plugin directories.
+	 */
+	@NotNull
+	public List<String> getPluginDirs ()
+	{
+		return Collections.unmodifiableList(new ArrayList<String>(state.plugin_dirs));
+	}
+
+	/**
+	 * @param plugin_dirs The directories to load plugin files from.
+	 */
+	public void setPluginDirs (@NotNull List<String> plugin_dirs)
+	{
+		state.plugin_dirs = new ArrayList<String>(plugin_dirs);
+		incModificationCount();
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.startup;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.util.Processor;
+import com.intellij.util.TimeoutUtil;
+import com.mollie.index.SmartyPluginIndex;
+import com.mollie.util.PhpClassInfo;
+import com.mollie.util.SmartyIndex;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fills the Smarty completion caches in the background once a project is opened and indexed, so the first completion
+ * doesn't have to query the PHP index cold. Runs on a low priority thread in read actions that give way to write
+ * actions. Interrupted steps resume from what's already cached.
+ *
+ * Only the plugin and function names are warmed up completely. Class descriptions are only warmed up for a limited
+ * number of classes, and constants not at all, because resolving a constant's type means loading its file.
+ *
+ * This runs again when indexing finishes, to replace the snapshot SmartyIndex serves while indexing, but only if the
+ * PHP code or the Smarty settings changed since the last snapshot.
+ */
+public class SmartyCacheWarmer implements StartupActivity
+{
+	/**
+	 * Maximum number of class descriptions to warm up.
+	 */
+	protected static final int MAX_CLASSES = 2000;
+
+	/**
+	 * Number of times to retry a step when a write action interrupts it.
+	 */
+	protected static final int MAX_ATTEMPTS = 5;
+
+	protected static final long RETRY_DELAY_MS = 200;
+
+	@Override
+	public void runActivity (@NotNull final Project project)
+	{
+		project.getMessageBus().connect(project).subscribe(
+			DumbService.DUMB_MODE,
+			new DumbService.DumbModeListener()
+			{
+				public void enteredDumbMode ()
+				{
+				}
+
+				public void exitDumbMode ()
+				{
+					schedule(project);
+				}
+			}
+		);
+
+		schedule(project);
+	}
+
+	/**
+	 * Warm up the caches on a pooled thread once the project is indexed.
+	 *
+	 * @param project The project to warm up the caches of.
+	 */
+	protected static void schedule (final Project project)
+	{
+		DumbService.getInstance(project).runWhenSmart(
+			new Runnable()
+			{
+				public void run ()
+				{
+					ApplicationManager.getApplication().executeOnPooledThread(
+						new Runnable()
+						{
+							public void run ()
+							{
+								warmUp(project);
+							}
+						}
+					);
+				}
+			}
+		);
+	}
+
+	/**
+	 * Warm up the plugin tries, the function names and some class descriptions, then take a snapshot. Every kind of
+	 * symbol is a separate step, so an interrupted step doesn't have to start over from the plugins.
+	 *
+	 * @param project The project to warm up the caches of.
+	 */
+	protected static void warmUp (final Project project)
+	{
+		Thread thread = Thread.currentThread();
+		int priority  = thread.getPriority();
+
+		thread.setPriority(Thread.MIN_PRIORITY);
+
+		try
+		{
+			final SmartyIndex smarty_index = SmartyIndex.getInstance(project);
+
+			// Indexing by itself doesn't change the caches, so only warm up again if the PHP code changed.
+			if (project.isDisposed() || !smarty_index.isSnapshotOutdated())
+			{
+				return;
+			}
+
+			boolean is_finished = runStep(
+				project,
+				new Runnable()
+				{
+					public void run ()
+					{
+						for (String type : SmartyPluginIndex.PLUGIN_TYPES)
+						{
+							smarty_index.processSmartyPluginNames(type, "", new CancellableProcessor<String>());
+						}
+					}
+				}
+			);
+
+			is_finished = is_finished && runStep(
+				project,
+				new Runnable()
+				{
+					public void run ()
+					{
+						smarty_index.processPHPFunctionNames("", new CancellableProcessor<String>());
+					}
+				}
+			);
+
+			is_finished = is_finished && runStep(
+				project,
+				new Runnable()
+				{
+					public void run ()
+					{
+						smarty_index.processPHPClasses("", new CancellableProcessor<PhpClassInfo>(MAX_CLASSES));
+					}
+				}
+			);
+
+			if (is_finished)
+			{
+				runStep(
+					project,
+					new Runnable()
+					{
+						public void run ()
+						{
+							smarty_index.updateSnapshot();
+						}
+					}
+				);
+			}
+		}
+		finally
+		{
+			thread.setPriority(priority);
+		}
+	}
+
+	/**
+	 * Run a warm-up step in a read action that's cancelled as soon as a write action comes along. Interrupted steps
+	 * are retried; the caches keep what was already computed, so a retry picks up where the last attempt left off.
+	 *
+	 * @param project The project being warmed up.
+	 * @param step    The step to run.
+	 *
+	 * @return False if the project was closed or went back into dumb mode, or the step kept getting interrupted.
+	 */
+	protected static boolean runStep (final Project project, final Runnable step)
+	{
+		final boolean[] is_available = {true};
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+		{
+			boolean is_finished = ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(
+				new Runnable()
+				{
+					public void run ()
+					{
+						is_available[0] = !project.isDisposed() && !DumbService.isDumb(project);
+
+						if (is_available[0])
+						{
+							step.run();
+						}
+					}
+				}
+			);
+
+			if (!is_available[0])
+			{
+				return false;
+			}
+
+			if (is_finished)
+			{
+				return true;
+			}
+
+			TimeoutUtil.sleep(RETRY_DELAY_MS);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Processor that goes over a limited number of items, and stops as soon as the read action is cancelled.
+	 */
+	protected static class CancellableProcessor<T> implements Processor<T>
+	{
+		protected final int max_items;
+
+		protected int count = 0;
+
+		protected CancellableProcessor ()
+		{
+			this(Integer.MAX_VALUE);
+		}
+
+		protected CancellableProcessor (int max_items)
+		{
+			this.max_items = max_items;
+		}
+
+		public boolean process (T item)
+		{
+			ProgressManager.checkCanceled();
+
+			return ++count < max_items;
+		}
+	}
+}
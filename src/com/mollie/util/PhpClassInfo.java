@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.icons.AllIcons;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+/**
+ * Lightweight description of a PHP class, taken from its stub. Used for suggestions so the class itself doesn't have
+ * to be kept around or loaded again.
+ */
+public class PhpClassInfo
+{
+	protected static final int INTERFACE = 1;
+	protected static final int TRAIT     = 2;
+	protected static final int ABSTRACT  = 4;
+
+	protected final String fqn;
+	protected final String name;
+	protected final int flags;
+
+	protected PhpClassInfo (String fqn, String name, int flags)
+	{
+		this.fqn   = fqn;
+		this.name  = name;
+		this.flags = flags;
+	}
+
+	/**
+	 * Describe a PHP class. Only reads data that is available from the class' stub.
+	 *
+	 * @param php_class The class to describe.
+	 *
+	 * @return The class description.
+	 */
+	@NotNull
+	public static PhpClassInfo of (@NotNull PhpClass php_class)
+	{
+		int flags = 0;
+
+		if (php_class.isInterface())
+		{
+			flags |= INTERFACE;
+		}
+
+		if (php_class.isTrait())
+		{
+			flags |= TRAIT;
+		}
+
+		if (php_class.isAbstract())
+		{
+			flags |= ABSTRACT;
+		}
+
+		return new PhpClassInfo(php_class.getFQN(), php_class.getName(), flags);
+	}
+
+	/**
+	 * Describe a PHP class of which only the short name is known, like while the project is being indexed. The class
+	 * is taken to be in the global namespace.
+	 *
+	 * @param class_name The short class name.
+	 *
+	 * @return The class description.
+	 */
+	@NotNull
+	public static PhpClassInfo of (@NotNull String class_name)
+	{
+		return new PhpClassInfo("\\" + class_name, class_name, 0);
+	}
+
+	/**
+	 * Get the fully qualified name, including the leading backslash.
+	 *
+	 * @return The fully qualified name.
+	 */
+	@NotNull
+	public String getFQN ()
+	{
+		return fqn;
+	}
+
+	/**
+	 * Get the short name, without the namespace.
+	 *
+	 * @return The short name.
+	 */
+	@NotNull
+	public String getName ()
+	{
+		return name;
+	}
+
+	/**
+	 * Get the namespace, without leading or trailing backslashes.
+	 *
+	 * @return The namespace, or an empty string for the global namespace.
+	 */
+	@NotNull
+	public String getNamespace ()
+	{
+		int separator = fqn.lastIndexOf('\\');
+
+		return separator > 0 ? fqn.substring(fqn.charAt(0) == '\\' ? 1 : 0, separator) : "";
+	}
+
+	/**
+	 * Get the icon matching the kind of class.
+	 *
+	 * @return The icon.
+	 */
+	public Icon getIcon ()
+	{
+		if ((flags & INTERFACE) != 0)
+		{
+			return AllIcons.Nodes.Interface;
+		}
+
+		if ((flags & ABSTRACT) != 0)
+		{
+			return AllIcons.Nodes.AbstractClass;
+		}
+
+		return AllIcons.Nodes.Class;
+	}
+
+	/**
+	 * Get the kind of class, for display purposes.
+	 *
+	 * @return "interface", "trait" or "class".
+	 */
+	@NotNull
+	public String getKind ()
+	{
+		if ((flags & INTERFACE) != 0)
+		{
+			return "interface";
+		}
+
+		return (flags & TRAIT) != 0 ? "trait" : "class";
+	}
+}
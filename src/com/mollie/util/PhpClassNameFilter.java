@@ -0,0 +1,308 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.codeInsight.completion.PlainPrefixMatcher;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.jetbrains.php.PhpIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Project service that quickly rules out strings that can't be PHP class names. Backed by a Bloom filter of all short
+ * class names in the project. A negative answer is definite; a positive answer still has to be confirmed with the PHP
+ * index.
+ *
+ * Building the filter means going over every class name in the project, which is too slow for the callers (intention
+ * availability runs on every caret move). So when classes might have been added, removed or renamed since the filter
+ * was built, the filter is rebuilt in the background, and until then every class name like string might be a class.
+ * Other edits, like typing in a method body or a string, keep the filter.
+ */
+public class PhpClassNameFilter
+{
+	// Bits per class name, and number of hash functions. Together these give roughly a 1% false positive rate.
+	protected static final int BITS_PER_NAME = 10;
+	protected static final int HASH_COUNT    = 7;
+
+	protected final Project project;
+
+	protected final AtomicBoolean is_rebuilding = new AtomicBoolean();
+
+	protected volatile BloomFilter bloom_filter;
+
+	/**
+	 * A Bloom filter, and the class names modification count it was built at.
+	 */
+	protected static class BloomFilter
+	{
+		protected final long modification_count;
+		protected final long[] bits;
+
+		protected BloomFilter (long modification_count, long[] bits)
+		{
+			this.modification_count = modification_count;
+			this.bits               = bits;
+		}
+	}
+
+	/**
+	 * @param project The project to look in.
+	 */
+	public PhpClassNameFilter (Project project)
+	{
+		this.project = project;
+	}
+
+	/**
+	 * Get the PhpClassNameFilter of a project.
+	 *
+	 * @param project The project to look in.
+	 *
+	 * @return The PhpClassNameFilter service.
+	 */
+	public static PhpClassNameFilter getInstance (@NotNull Project project)
+	{
+		return ServiceManager.getService(project, PhpClassNameFilter.class);
+	}
+
+	/**
+	 * Check if a string might be the (short or fully qualified) name of a PHP class in the project.
+	 *
+	 * @param class_name The string to check.
+	 *
+	 * @return False if there's definitely no such class, true if there might be.
+	 */
+	public boolean mightBeClassName (@NotNull String class_name)
+	{
+		if (!isClassNameLike(class_name))
+		{
+			return false;
+		}
+
+		// Only short names are in the filter, so look at the last part of namespaced names.
+		String short_name = class_name.substring(class_name.lastIndexOf('\\') + 1);
+
+		if (short_name.length() == 0)
+		{
+			return false;
+		}
+
+		BloomFilter filter = getCurrentFilter();
+
+		return filter == null || mightContain(filter.bits, short_name);
+	}
+
+	/**
+	 * Get the Bloom filter if it's up to date with the PHP class names, or schedule a rebuild.
+	 *
+	 * @return The filter, or NULL if it's missing or out of date.
+	 */
+	@Nullable
+	protected BloomFilter getCurrentFilter ()
+	{
+		BloomFilter filter = bloom_filter;
+
+		if (filter != null && filter.modification_count == PhpModificationTracker.getInstance(project).getClassNamesTracker().getModificationCount())
+		{
+			return filter;
+		}
+
+		scheduleRebuild();
+
+		return null;
+	}
+
+	/**
+	 * Build the Bloom filter right away if it's missing or out of date, so the following checks don't fall back to
+	 * "might be a class". For batch jobs; must be called in a background read action while the project isn't being
+	 * indexed.
+	 */
+	public void ensureUpToDate ()
+	{
+		BloomFilter filter = bloom_filter;
+
+		if (filter == null || filter.modification_count != PhpModificationTracker.getInstance(project).getClassNamesTracker().getModificationCount())
+		{
+			bloom_filter = build();
+		}
+	}
+
+	/**
+	 * Build a Bloom filter of all short class names in the project. Must be called in a read action.
+	 *
+	 * @return The filter.
+	 */
+	protected BloomFilter build ()
+	{
+		// Read the count first, so changes made while building make the new filter out of date.
+		long modification_count  = PhpModificationTracker.getInstance(project).getClassNamesTracker().getModificationCount();
+		Collection<String> names = PhpIndex.getInstance(project).getAllClassNames(new PlainPrefixMatcher(""));
+
+		return new BloomFilter(modification_count, buildBloomFilter(names));
+	}
+
+	/**
+	 * Rebuild the Bloom filter in a non-blocking background read action, unless a rebuild is already running.
+	 */
+	protected void scheduleRebuild ()
+	{
+		if (!is_rebuilding.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		ReadAction
+			.nonBlocking(
+				new Callable<BloomFilter>()
+				{
+					public BloomFilter call ()
+					{
+						return build();
+					}
+				}
+			)
+			.inSmartMode(project)
+			.expireWhen(
+				new BooleanSupplier()
+				{
+					public boolean getAsBoolean ()
+					{
+						return project.isDisposed();
+					}
+				}
+			)
+			.submit(AppExecutorUtil.getAppExecutorService())
+			.onProcessed(
+				new Consumer<BloomFilter>()
+				{
+					public void accept (BloomFilter filter)
+					{
+						if (filter != null)
+						{
+							bloom_filter = filter;
+						}
+
+						is_rebuilding.set(false);
+					}
+				}
+			);
+	}
+
+	/**
+	 * Check if a string looks like a class name: identifiers separated by backslashes.
+	 *
+	 * @param class_name The string to check.
+	 *
+	 * @return True if the string looks like a class name.
+	 */
+	public static boolean isClassNameLike (@NotNull String class_name)
+	{
+		boolean is_identifier_start = true;
+
+		for (int i = 0; i < class_name.length(); i++)
+		{
+			char c = class_name.charAt(i);
+
+			if (c == '\\')
+			{
+				is_identifier_start = true;
+			}
+			else if (SmartyVariableScanner.isIdentifierStart(c) || c >= 0x7f || (!is_identifier_start && c >= '0' && c <= '9'))
+			{
+				is_identifier_start = false;
+			}
+			else
+			{
+				return false;
+			}
+		}
+
+		return !is_identifier_start;
+	}
+
+	protected static long[] buildBloomFilter (Collection<String> class_names)
+	{
+		long[] bits = new long[Math.max(1, (class_names.size() * BITS_PER_NAME + 63) / 64)];
+
+		for (String class_name : class_names)
+		{
+			int hash_1 = class_name.toLowerCase().hashCode();
+			int hash_2 = mix(hash_1);
+
+			for (int i = 0; i < HASH_COUNT; i++)
+			{
+				int bit = getBit(bits, hash_1 + i * hash_2);
+				bits[bit >>> 6] |= 1L << bit;
+			}
+		}
+
+		return bits;
+	}
+
+	protected static boolean mightContain (long[] bits, String class_name)
+	{
+		int hash_1 = class_name.toLowerCase().hashCode();
+		int hash_2 = mix(hash_1);
+
+		for (int i = 0; i < HASH_COUNT; i++)
+		{
+			int bit = getBit(bits, hash_1 + i * hash_2);
+
+			if ((bits[bit >>> 6] & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	protected static int getBit (long[] bits, int hash)
+	{
+		return (int) ((hash & 0xffffffffL) % (bits.length * 64L));
+	}
+
+	protected static int mix (int hash)
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+
+		return hash | 1;
+	}
+}
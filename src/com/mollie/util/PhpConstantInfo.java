@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiElement;
+import com.jetbrains.php.lang.psi.elements.Constant;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+/**
+ * Resolved type and value preview of a PHP constant. Resolving the type is resource heavy, so these are cached rather
+ * than computed for every suggestion.
+ */
+public class PhpConstantInfo
+{
+	protected static final int MAX_VALUE_LENGTH = 30;
+
+	protected final String name;
+	protected final String type_text;
+	protected final String value_text;
+	protected final Icon icon;
+
+	protected PhpConstantInfo (String name, String type_text, String value_text, Icon icon)
+	{
+		this.name       = name;
+		this.type_text  = type_text;
+		this.value_text = value_text;
+		this.icon       = icon;
+	}
+
+	/**
+	 * Describe a PHP constant.
+	 *
+	 * @param php_constant The constant to describe.
+	 *
+	 * @return The constant description.
+	 */
+	@NotNull
+	public static PhpConstantInfo of (@NotNull Constant php_constant)
+	{
+		PsiElement value = php_constant.getValue();
+		String value_text = value == null ? "" : StringUtil.first(value.getText(), MAX_VALUE_LENGTH, true);
+
+		return new PhpConstantInfo(
+			php_constant.getName(),
+			php_constant.getType().toStringResolved(),
+			value_text,
+			php_constant.getIcon()
+		);
+	}
+
+	/**
+	 * Describe a PHP constant of which only the name is known, like while the project is being indexed.
+	 *
+	 * @param constant_name The constant name.
+	 *
+	 * @return The constant description, without type, value or icon.
+	 */
+	@NotNull
+	public static PhpConstantInfo of (@NotNull String constant_name)
+	{
+		return new PhpConstantInfo(constant_name, "", "", null);
+	}
+
+	/**
+	 * Get the name of the constant.
+	 *
+	 * @return The name.
+	 */
+	@NotNull
+	public String getName ()
+	{
+		return name;
+	}
+
+	/**
+	 * Get the resolved type of the constant.
+	 *
+	 * @return The type.
+	 */
+	@NotNull
+	public String getTypeText ()
+	{
+		return type_text;
+	}
+
+	/**
+	 * Get a (possibly truncated) preview of the constant's value.
+	 *
+	 * @return The value, or an empty string if it's unknown.
+	 */
+	@NotNull
+	public String getValueText ()
+	{
+		return value_text;
+	}
+
+	/**
+	 * Get the icon of the constant.
+	 *
+	 * @return The icon.
+	 */
+	public Icon getIcon ()
+	{
+		return icon;
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.jetbrains.php.lang.psi.elements.Parameter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The rendered parameter list and return type of a PHP function or method. Resolving the types is resource heavy, so
+ * signatures are cached until the file containing the function changes.
+ */
+public class PhpFunctionSignature
+{
+	protected final String tail_text;
+	protected final String type_text;
+
+	protected PhpFunctionSignature (String tail_text, String type_text)
+	{
+		this.tail_text = tail_text;
+		this.type_text = type_text;
+	}
+
+	/**
+	 * Get the (cached) signature of a PHP function or method.
+	 *
+	 * @param php_function The function to get the signature of.
+	 *
+	 * @return The signature.
+	 */
+	@NotNull
+	public static PhpFunctionSignature of (@NotNull final Function php_function)
+	{
+		return CachedValuesManager.getCachedValue(
+			php_function,
+			new CachedValueProvider<PhpFunctionSignature>()
+			{
+				@Nullable
+				public Result<PhpFunctionSignature> compute ()
+				{
+					return Result.create(create(php_function), php_function.getContainingFile());
+				}
+			}
+		);
+	}
+
+	/**
+	 * Render the signature of a PHP function or method.
+	 *
+	 * @param php_function The function to render the signature of.
+	 *
+	 * @return The signature.
+	 */
+	@NotNull
+	protected static PhpFunctionSignature create (@NotNull Function php_function)
+	{
+		// Create the parameter string.
+		StringBuilder tail_text = new StringBuilder("(");
+		boolean is_first        = true;
+
+		for (Parameter parameter : php_function.getParameters())
+		{
+			if (!is_first)
+			{
+				tail_text.append(", ");
+			}
+
+			is_first = false;
+
+			if (parameter.isOptional())
+			{
+				tail_text.append('[');
+			}
+
+			if (parameter.isPassByRef())
+			{
+				tail_text.append('&');
+			}
+
+			tail_text.append(parameter.getName());
+
+			String declared_type = parameter.getDeclaredType().toStringResolved();
+
+			if (declared_type.length() > 0)
+			{
+				tail_text.append(" : ").append(declared_type);
+			}
+
+			if (parameter.isOptional())
+			{
+				PsiElement default_value = parameter.getDefaultValue();
+
+				if (default_value != null)
+				{
+					tail_text.append(" = ").append(default_value.getText());
+				}
+
+				tail_text.append(']');
+			}
+		}
+
+		tail_text.append(')');
+
+		return new PhpFunctionSignature(tail_text.toString(), php_function.getType().toStringResolved());
+	}
+
+	/**
+	 * Get the parameter list, including parentheses.
+	 *
+	 * @return The parameter list.
+	 */
+	@NotNull
+	public String getTailText ()
+	{
+		return tail_text;
+	}
+
+	/**
+	 * Get the resolved return type.
+	 *
+	 * @return The return type.
+	 */
+	@NotNull
+	public String getTypeText ()
+	{
+		return type_text;
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.PsiTreeChangeEventImpl;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.jetbrains.php.lang.documentation.phpdoc.psi.PhpDocComment;
+import com.jetbrains.php.lang.psi.PhpFile;
+import com.jetbrains.php.lang.psi.elements.Function;
+import com.jetbrains.php.lang.psi.elements.GroupStatement;
+import com.jetbrains.php.lang.psi.elements.MethodReference;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import com.jetbrains.php.lang.psi.elements.StringLiteralExpression;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Project service that counts changes to the structure of the PHP code of a project: edits in PHP files outside of
+ * function bodies, PHP files or directories being added, removed, moved or renamed (in the editor or on disk), and
+ * indexing finishing after such changes. Unlike the PSI out of code block counter, editing a Smarty template (or any
+ * other non-PHP file) doesn't count, so caches of PHP symbols and plugins keyed on this tracker survive template
+ * editing.
+ *
+ * Edits inside function bodies only count towards {@link #getRegisteredPluginsTracker()}, and only if they might
+ * change a registerPlugin() call. {@link #getClassNamesTracker()} only counts the structure changes that might add,
+ * remove or rename a class.
+ */
+public class PhpModificationTracker extends SimpleModificationTracker
+{
+	protected static final String REGISTER_PLUGIN_METHOD = "registerPlugin";
+
+	// The modification count when indexing last started.
+	protected volatile long dumb_mode_modification_count;
+
+	// Counts the registerPlugin() calls changing in function bodies, which aren't structure changes.
+	protected final SimpleModificationTracker registered_plugins_tracker = new SimpleModificationTracker();
+
+	// Counts the changes that might add, remove or rename a class.
+	protected final SimpleModificationTracker class_names_tracker = new SimpleModificationTracker();
+
+	// The class names modification count when indexing last started.
+	protected volatile long dumb_mode_class_names_modification_count;
+
+	/**
+	 * Start tracking changes to the PHP code of a project.
+	 *
+	 * @param project The project to watch.
+	 */
+	public PhpModificationTracker (Project project)
+	{
+		PsiManager.getInstance(project).addPsiTreeChangeListener(
+			new PsiTreeChangeAdapter()
+			{
+				@Override
+				public void childAdded (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+
+				@Override
+				public void childRemoved (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+
+				@Override
+				public void childReplaced (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+
+				@Override
+				public void childMoved (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+
+				@Override
+				public void childrenChanged (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+
+				@Override
+				public void propertyChanged (@NotNull PsiTreeChangeEvent event)
+				{
+					psiChanged(event);
+				}
+			},
+			project
+		);
+
+		MessageBusConnection connection = project.getMessageBus().connect(project);
+
+		// Files that change on disk without being loaded (e.g. after a branch switch) don't cause PSI events.
+		connection.subscribe(
+			VirtualFileManager.VFS_CHANGES,
+			new BulkFileListener()
+			{
+				@Override
+				public void after (@NotNull List<? extends VFileEvent> events)
+				{
+					for (VFileEvent event : events)
+					{
+						VirtualFile file = event.getFile();
+
+						if ((file != null && file.isDirectory()) || StringUtil.endsWithIgnoreCase(event.getPath(), ".php"))
+						{
+							incModificationCount();
+							class_names_tracker.incModificationCount();
+							return;
+						}
+					}
+				}
+			}
+		);
+
+		// Caches built while the changed PHP code was still being indexed may be incomplete, so count the changes again
+		// once indexing finishes. Indexing by itself doesn't change the PHP code.
+		connection.subscribe(
+			DumbService.DUMB_MODE,
+			new DumbService.DumbModeListener()
+			{
+				public void enteredDumbMode ()
+				{
+					dumb_mode_modification_count             = getModificationCount();
+					dumb_mode_class_names_modification_count = class_names_tracker.getModificationCount();
+				}
+
+				public void exitDumbMode ()
+				{
+					if (getModificationCount() != dumb_mode_modification_count)
+					{
+						incModificationCount();
+					}
+
+					if (class_names_tracker.getModificationCount() != dumb_mode_class_names_modification_count)
+					{
+						class_names_tracker.incModificationCount();
+					}
+				}
+			}
+		);
+	}
+
+	/**
+	 * Get the PhpModificationTracker of a project.
+	 *
+	 * @param project The project to look in.
+	 *
+	 * @return The PhpModificationTracker service.
+	 */
+	public static PhpModificationTracker getInstance (@NotNull Project project)
+	{
+		return ServiceManager.getService(project, PhpModificationTracker.class);
+	}
+
+	/**
+	 * Get a tracker that changes with this tracker, and also when a registerPlugin() call in a function body changes.
+	 *
+	 * @return The tracker to depend on for registered plugins.
+	 */
+	public ModificationTracker getRegisteredPluginsTracker ()
+	{
+		final ModificationTracker structure_tracker = this;
+
+		return new ModificationTracker()
+		{
+			public long getModificationCount ()
+			{
+				return structure_tracker.getModificationCount() + registered_plugins_tracker.getModificationCount();
+			}
+		};
+	}
+
+	/**
+	 * Get a tracker that only changes when classes might have been added, removed or renamed.
+	 *
+	 * @return The tracker to depend on for class names.
+	 */
+	public ModificationTracker getClassNamesTracker ()
+	{
+		return class_names_tracker;
+	}
+
+	/**
+	 * Count a PSI change if it changes the structure of a PHP file, or adds, removes, moves or renames a PHP file or a
+	 * directory. Edits in function bodies only count if they might change a registerPlugin() call.
+	 *
+	 * @param event The change.
+	 */
+	protected void psiChanged (PsiTreeChangeEvent event)
+	{
+		// Generic events are followed by the specific ones.
+		if (event instanceof PsiTreeChangeEventImpl && ((PsiTreeChangeEventImpl) event).isGenericChange())
+		{
+			return;
+		}
+
+		if (isPhpFileOrDirectory(event.getChild())
+			|| isPhpFileOrDirectory(event.getOldChild())
+			|| isPhpFileOrDirectory(event.getNewChild())
+			|| isPhpFileOrDirectory(event.getElement()))
+		{
+			incModificationCount();
+			class_names_tracker.incModificationCount();
+			return;
+		}
+
+		if (!(event.getFile() instanceof PhpFile) || isWhiteSpaceOrComment(event))
+		{
+			return;
+		}
+
+		if (!isInFunctionBody(event.getParent()))
+		{
+			incModificationCount();
+		}
+		else if (mightChangeRegisteredPlugin(event))
+		{
+			registered_plugins_tracker.incModificationCount();
+		}
+
+		// Classes can be declared in function bodies too.
+		if (mightChangeClassNames(event))
+		{
+			class_names_tracker.incModificationCount();
+		}
+	}
+
+	/**
+	 * Check if a change only adds, removes or replaces whitespace or (non-doc) comments.
+	 *
+	 * @param event The change.
+	 *
+	 * @return True if the change doesn't change the code.
+	 */
+	protected static boolean isWhiteSpaceOrComment (PsiTreeChangeEvent event)
+	{
+		boolean has_children = false;
+
+		for (PsiElement child : new PsiElement[]{event.getChild(), event.getOldChild(), event.getNewChild()})
+		{
+			if (child == null)
+			{
+				continue;
+			}
+
+			if (!(child instanceof PsiWhiteSpace) && (!(child instanceof PsiComment) || child instanceof PhpDocComment))
+			{
+				return false;
+			}
+
+			has_children = true;
+		}
+
+		return has_children;
+	}
+
+	/**
+	 * Check if an element is inside the body of a function, method or closure.
+	 *
+	 * @param element The element, or null.
+	 *
+	 * @return True if the element is (in) a function body.
+	 */
+	protected static boolean isInFunctionBody (PsiElement element)
+	{
+		for (PsiElement parent = element; parent != null && !(parent instanceof PsiFile); parent = parent.getParent())
+		{
+			if (parent instanceof GroupStatement && parent.getParent() instanceof Function)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check if a structure change might add, remove or rename a class: it adds, removes or replaces (part of) a class,
+	 * or changes a token of a class itself, like its name. Changes in strings never do.
+	 *
+	 * @param event The change.
+	 *
+	 * @return True if the class names might have changed.
+	 */
+	protected static boolean mightChangeClassNames (PsiTreeChangeEvent event)
+	{
+		PsiElement parent = event.getParent();
+
+		if (PsiTreeUtil.getParentOfType(parent, StringLiteralExpression.class, false) != null)
+		{
+			return false;
+		}
+
+		boolean has_children = false;
+
+		for (PsiElement child : new PsiElement[]{event.getChild(), event.getOldChild(), event.getNewChild()})
+		{
+			if (child == null)
+			{
+				continue;
+			}
+
+			if (PsiTreeUtil.findChildOfType(child, PhpClass.class, false) != null
+				|| (parent instanceof PhpClass && child.getFirstChild() == null))
+			{
+				return true;
+			}
+
+			has_children = true;
+		}
+
+		return parent instanceof PhpClass && !has_children;
+	}
+
+	/**
+	 * Check if a change in a function body might add, remove or change a registerPlugin() call.
+	 *
+	 * @param event The change.
+	 *
+	 * @return True if the change is in a registerPlugin() call, or adds or removes text mentioning it.
+	 */
+	protected static boolean mightChangeRegisteredPlugin (PsiTreeChangeEvent event)
+	{
+		for (PsiElement child : new PsiElement[]{event.getChild(), event.getOldChild(), event.getNewChild()})
+		{
+			if (child != null && StringUtil.indexOfIgnoreCase(child.getText(), REGISTER_PLUGIN_METHOD, 0) >= 0)
+			{
+				return true;
+			}
+		}
+
+		for (PsiElement parent = event.getParent(); parent != null && !(parent instanceof Function); parent = parent.getParent())
+		{
+			if (parent instanceof MethodReference && REGISTER_PLUGIN_METHOD.equalsIgnoreCase(((MethodReference) parent).getName()))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	protected static boolean isPhpFileOrDirectory (PsiElement element)
+	{
+		return element instanceof PhpFile || element instanceof PsiDirectory;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.jetbrains.php.lang.psi.elements.Field;
+import com.jetbrains.php.lang.psi.elements.Method;
+import com.jetbrains.php.lang.psi.elements.PhpClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The static methods and constants of a PHP class, including the ones inherited from parent classes, interfaces and
+ * traits. Walking the hierarchy is done once per class and cached until the PHP code of the project changes.
+ */
+public class PhpStaticMembers
+{
+	protected final List<Method> static_methods;
+	protected final List<Field> constants;
+
+	protected PhpStaticMembers (List<Method> static_methods, List<Field> constants)
+	{
+		this.static_methods = static_methods;
+		this.constants      = constants;
+	}
+
+	/**
+	 * Get the (cached) static members of a PHP class.
+	 *
+	 * @param php_class The class to look in.
+	 *
+	 * @return The static members.
+	 */
+	@NotNull
+	public static PhpStaticMembers of (@NotNull final PhpClass php_class)
+	{
+		return CachedValuesManager.getCachedValue(
+			php_class,
+			new CachedValueProvider<PhpStaticMembers>()
+			{
+				@Nullable
+				public Result<PhpStaticMembers> compute ()
+				{
+					return Result.create(create(php_class), PhpModificationTracker.getInstance(php_class.getProject()));
+				}
+			}
+		);
+	}
+
+	/**
+	 * Collect the static members of a PHP class by walking its hierarchy.
+	 *
+	 * @param php_class The class to look in.
+	 *
+	 * @return The static members.
+	 */
+	@NotNull
+	protected static PhpStaticMembers create (@NotNull PhpClass php_class)
+	{
+		// Members closer to the class hide members with the same name further up the hierarchy.
+		Map<String, Method> static_methods = new LinkedHashMap<String, Method>();
+		Map<String, Field> constants       = new LinkedHashMap<String, Field>();
+
+		collect(php_class, static_methods, constants, new HashSet<String>());
+
+		return new PhpStaticMembers(
+			Collections.unmodifiableList(new ArrayList<Method>(static_methods.values())),
+			Collections.unmodifiableList(new ArrayList<Field>(constants.values()))
+		);
+	}
+
+	/**
+	 * Collect the static members of a class, then of its traits, parent class and interfaces.
+	 *
+	 * @param php_class      The class to look in.
+	 * @param static_methods The static methods found so far, by lowercase name.
+	 * @param constants      The constants found so far, by name.
+	 * @param visited        The fully qualified names of the classes we've already visited.
+	 */
+	protected static void collect (@Nullable PhpClass php_class, Map<String, Method> static_methods, Map<String, Field> constants, Set<String> visited)
+	{
+		if (php_class == null || !visited.add(php_class.getFQN()))
+		{
+			return;
+		}
+
+		for (Method method : php_class.getMethods())
+		{
+			String name = method.getName().toLowerCase();
+
+			if (method.isStatic() && !static_methods.containsKey(name))
+			{
+				static_methods.put(name, method);
+			}
+		}
+
+		for (Field field : php_class.getFields())
+		{
+			if (field.isConstant() && !constants.containsKey(field.getName()))
+			{
+				constants.put(field.getName(), field);
+			}
+		}
+
+		for (PhpClass trait : php_class.getTraits())
+		{
+			collect(trait, static_methods, constants, visited);
+		}
+
+		collect(php_class.getSuperClass(), static_methods, constants, visited);
+
+		for (PhpClass php_interface : php_class.getImplementedInterfaces())
+		{
+			collect(php_interface, static_methods, constants, visited);
+		}
+	}
+
+	/**
+	 * Get the static methods, including inherited ones.
+	 *
+	 * @return Unmodifiable list of methods.
+	 */
+	@NotNull
+	public List<Method> getStaticMethods ()
+	{
+		return static_methods;
+	}
+
+	/**
+	 * Get the class constants, including inherited ones.
+	 *
+	 * @return Unmodifiable list of constants.
+	 */
+	@NotNull
+	public List<Field> getConstants ()
+	{
+		return constants;
+	}
+}
@@ -0,0 +1,454 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.jetbrains.smarty.SmartyFile;
+import com.mollie.index.SmartyIncludeIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project service that follows {include} and {extends} tags up the template tree, to find the variables a template
+ * gets from the templates that pull it in.
+ *
+ * The variables a template inherits from its ancestors are cached separately from its own variables, so editing the
+ * template itself doesn't mean walking up the graph again. The inherited variables are cached until one of the
+ * ancestors changes, or until an include edge into the template or one of its ancestors is added, removed or changed.
+ * Edges are tracked incrementally: only templates that were edited since the last check are rescanned, and only the
+ * file names their changed {include} and {extends} tags point to count as changed.
+ */
+public class SmartyIncludeGraph
+{
+	/**
+	 * Maximum number of templates to follow up the include graph.
+	 */
+	protected static final int MAX_ANCESTORS = 100;
+
+	protected static final Key<CachedValue<Set<String>>> INHERITED_VARIABLES = Key.create("com.mollie.smarty.inherited_variables");
+
+	protected final Project project;
+
+	protected final GlobalSearchScope content_scope;
+
+	// Counts the templates or directories being added, removed, moved or renamed, which can change any edge.
+	protected final AtomicLong files_modification_count = new AtomicLong();
+
+	// Counts the edge changes per index key (file name) of the templates the edges point to.
+	protected final ConcurrentMap<String, AtomicLong> edge_modification_counts = new ConcurrentHashMap<String, AtomicLong>();
+
+	protected final Set<VirtualFile> changed_files = Collections.newSetFromMap(new ConcurrentHashMap<VirtualFile, Boolean>());
+
+	protected final ConcurrentMap<VirtualFile, Map<String, Set<String>>> known_edges = new ConcurrentHashMap<VirtualFile, Map<String, Set<String>>>();
+
+	/**
+	 * Start tracking changes to the templates of a project.
+	 *
+	 * @param project The project to look in.
+	 */
+	public SmartyIncludeGraph (Project project)
+	{
+		this.project  = project;
+		content_scope = GlobalSearchScope.projectScope(project);
+
+		PsiManager.getInstance(project).addPsiTreeChangeListener(
+			new PsiTreeChangeAdapter()
+			{
+				@Override
+				public void beforeChildAddition (@NotNull PsiTreeChangeEvent event)
+				{
+					beforeFileChange(event);
+				}
+
+				@Override
+				public void beforeChildRemoval (@NotNull PsiTreeChangeEvent event)
+				{
+					beforeFileChange(event);
+				}
+
+				@Override
+				public void beforeChildReplacement (@NotNull PsiTreeChangeEvent event)
+				{
+					beforeFileChange(event);
+				}
+
+				@Override
+				public void beforeChildMovement (@NotNull PsiTreeChangeEvent event)
+				{
+					beforeFileChange(event);
+				}
+
+				@Override
+				public void beforeChildrenChange (@NotNull PsiTreeChangeEvent event)
+				{
+					beforeFileChange(event);
+				}
+
+				@Override
+				public void childAdded (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+
+				@Override
+				public void childRemoved (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+
+				@Override
+				public void childReplaced (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+
+				@Override
+				public void childMoved (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+
+				@Override
+				public void childrenChanged (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+
+				@Override
+				public void propertyChanged (@NotNull PsiTreeChangeEvent event)
+				{
+					fileChanged(event);
+				}
+			},
+			project
+		);
+	}
+
+	public static SmartyIncludeGraph getInstance (@NotNull Project project)
+	{
+		return ServiceManager.getService(project, SmartyIncludeGraph.class);
+	}
+
+	/**
+	 * Get all the variables visible in a Smarty file: the ones it defines itself, the ones passed to it by {include}
+	 * tags, and the ones visible in the templates that include or extend it.
+	 *
+	 * @param file The Smarty file.
+	 *
+	 * @return Unmodifiable set of all visible variables.
+	 */
+	public Set<String> getVisibleVariables (PsiFile file)
+	{
+		Set<String> own_variables = SmartyIndex.getInstance(project).getSmartyVariables(file);
+
+		// The include graph comes from an index, so only the file's own variables are known while indexing.
+		if (SmartyIndex.getInstance(project).isDumb())
+		{
+			return own_variables;
+		}
+
+		Set<String> inherited_variables = getInheritedVariables(file.getOriginalFile());
+
+		if (inherited_variables.isEmpty())
+		{
+			return own_variables;
+		}
+
+		Set<String> variables = new LinkedHashSet<String>(own_variables);
+		variables.addAll(inherited_variables);
+
+		return Collections.unmodifiableSet(variables);
+	}
+
+	/**
+	 * Get the variables a Smarty file gets from the templates that include or extend it, cached until one of those
+	 * templates or the edges into them change.
+	 *
+	 * @param file The (original) Smarty file.
+	 *
+	 * @return Unmodifiable set of the inherited variables.
+	 */
+	protected Set<String> getInheritedVariables (final PsiFile file)
+	{
+		return CachedValuesManager.getCachedValue(
+			file,
+			INHERITED_VARIABLES,
+			new CachedValueProvider<Set<String>>()
+			{
+				@Nullable
+				public Result<Set<String>> compute ()
+				{
+					return computeInheritedVariables(file);
+				}
+			}
+		);
+	}
+
+	/**
+	 * Walk up the include graph breadth first, collecting the variables of every ancestor. The result depends on the
+	 * ancestors and on the edges into the file and its ancestors, but not on the file itself.
+	 *
+	 * @param file The Smarty file.
+	 *
+	 * @return The inherited variables, with their dependencies.
+	 */
+	protected CachedValueProvider.Result<Set<String>> computeInheritedVariables (PsiFile file)
+	{
+		final SmartyIndex smarty_index = SmartyIndex.getInstance(project);
+		final PsiManager psi_manager   = PsiManager.getInstance(project);
+
+		final Set<String> variables     = new LinkedHashSet<String>();
+		final List<Object> dependencies = new ArrayList<Object>();
+		final Set<VirtualFile> visited  = new HashSet<VirtualFile>();
+		final LinkedList<PsiFile> queue = new LinkedList<PsiFile>();
+
+		dependencies.add(getEdgesTracker(file.getName()));
+		visited.add(file.getVirtualFile());
+		queue.add(file);
+
+		while (!queue.isEmpty() && visited.size() <= MAX_ANCESTORS)
+		{
+			VirtualFile template = queue.removeFirst().getVirtualFile();
+
+			if (template == null)
+			{
+				continue;
+			}
+
+			SmartyTemplates.processValues(
+				SmartyIncludeIndex.NAME,
+				template,
+				content_scope,
+				new FileBasedIndex.ValueProcessor<Set<String>>()
+				{
+					public boolean process (VirtualFile parent, Set<String> passed_variables)
+					{
+						variables.addAll(passed_variables);
+
+						if (!visited.add(parent))
+						{
+							return true;
+						}
+
+						PsiFile parent_file = psi_manager.findFile(parent);
+
+						if (parent_file != null)
+						{
+							variables.addAll(smarty_index.getSmartyVariables(parent_file));
+							dependencies.add(parent_file);
+							dependencies.add(getEdgesTracker(parent.getName()));
+							queue.add(parent_file);
+						}
+
+						return true;
+					}
+				}
+			);
+		}
+
+		return CachedValueProvider.Result.create(Collections.unmodifiableSet(variables), dependencies.toArray());
+	}
+
+	/**
+	 * Get a tracker for the include edges pointing to templates with a given file name. Templates or directories
+	 * being added, removed, moved or renamed count as a change for every file name.
+	 *
+	 * @param key The index key: the file name of the templates.
+	 *
+	 * @return The tracker.
+	 */
+	protected ModificationTracker getEdgesTracker (final String key)
+	{
+		return new ModificationTracker()
+		{
+			public long getModificationCount ()
+			{
+				processChangedFiles();
+
+				AtomicLong edge_modification_count = edge_modification_counts.get(key);
+
+				return files_modification_count.get() + (edge_modification_count == null ? 0 : edge_modification_count.get());
+			}
+		};
+	}
+
+	/**
+	 * Remember the include edges of a template before it's edited for the first time. The PSI tree still holds the
+	 * committed text, which is what the include index was built from, so an edit that doesn't touch the {include} and
+	 * {extends} tags won't count as an edge change later on.
+	 *
+	 * @param event The upcoming change.
+	 */
+	protected void beforeFileChange (PsiTreeChangeEvent event)
+	{
+		PsiFile file = event.getFile();
+
+		if (!(file instanceof SmartyFile) || file.getVirtualFile() == null || known_edges.containsKey(file.getVirtualFile()))
+		{
+			return;
+		}
+
+		known_edges.putIfAbsent(file.getVirtualFile(), SmartyIncludeScanner.scan(file.getNode().getChars(), project));
+	}
+
+	/**
+	 * Remember that a file changed. Changes to a template are only checked for new or removed include edges when
+	 * an edges tracker is queried. Templates or directories being added, removed, moved or renamed change which
+	 * templates the edges point to, so those always count as an edge change.
+	 *
+	 * @param event The change.
+	 */
+	protected void fileChanged (PsiTreeChangeEvent event)
+	{
+		PsiFile file = event.getFile();
+
+		if (file instanceof SmartyFile && file.getVirtualFile() != null)
+		{
+			changed_files.add(file.getVirtualFile());
+		}
+		else if (file == null
+			&& (isTemplateOrDirectory(event.getChild())
+				|| isTemplateOrDirectory(event.getOldChild())
+				|| isTemplateOrDirectory(event.getNewChild())
+				|| isTemplateOrDirectory(event.getElement())))
+		{
+			pruneKnownEdges();
+			files_modification_count.incrementAndGet();
+		}
+	}
+
+	protected static boolean isTemplateOrDirectory (PsiElement element)
+	{
+		return element instanceof SmartyFile || element instanceof PsiDirectory;
+	}
+
+	/**
+	 * Forget the edges of templates that no longer exist.
+	 */
+	protected void pruneKnownEdges ()
+	{
+		for (Iterator<VirtualFile> iterator = known_edges.keySet().iterator(); iterator.hasNext(); )
+		{
+			if (!iterator.next().isValid())
+			{
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Rescan the templates that changed since the last check, and count an edge change for the file names of the
+	 * templates their added, removed or changed {include} and {extends} tags point to.
+	 */
+	protected void processChangedFiles ()
+	{
+		PsiManager psi_manager = PsiManager.getInstance(project);
+
+		for (Iterator<VirtualFile> iterator = changed_files.iterator(); iterator.hasNext(); )
+		{
+			VirtualFile virtual_file = iterator.next();
+			iterator.remove();
+
+			PsiFile file = virtual_file.isValid() ? psi_manager.findFile(virtual_file) : null;
+
+			Map<String, Set<String>> edges    = file == null ? null : SmartyIncludeScanner.scan(file.getViewProvider().getContents(), project);
+			Map<String, Set<String>> previous = edges == null ? known_edges.remove(virtual_file) : known_edges.put(virtual_file, edges);
+
+			// The edges are seeded before the first edit, so they're only unknown if we missed that.
+			if (previous == null)
+			{
+				files_modification_count.incrementAndGet();
+				continue;
+			}
+
+			if (edges == null)
+			{
+				edges = Collections.emptyMap();
+			}
+
+			for (String template : getChangedTemplates(previous, edges))
+			{
+				String key                    = SmartyTemplates.getKey(template);
+				AtomicLong modification_count = edge_modification_counts.get(key);
+
+				if (modification_count == null)
+				{
+					edge_modification_counts.putIfAbsent(key, new AtomicLong());
+					modification_count = edge_modification_counts.get(key);
+				}
+
+				modification_count.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Compare the edges of a template before and after a change.
+	 *
+	 * @param previous The edges before the change.
+	 * @param edges    The edges after the change.
+	 *
+	 * @return The templates that are only included before or after the change, or with other variables.
+	 */
+	protected static Set<String> getChangedTemplates (Map<String, Set<String>> previous, Map<String, Set<String>> edges)
+	{
+		Set<String> templates = new HashSet<String>();
+
+		for (Map.Entry<String, Set<String>> entry : previous.entrySet())
+		{
+			if (!entry.getValue().equals(edges.get(entry.getKey())))
+			{
+				templates.add(entry.getKey());
+			}
+		}
+
+		for (String template : edges.keySet())
+		{
+			if (!previous.containsKey(template))
+			{
+				templates.add(template);
+			}
+		}
+
+		return templates;
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import com.jetbrains.smarty.SmartyLanguage;
+import com.jetbrains.smarty.lang.SmartyTokenTypes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Finds the templates a Smarty template pulls in with {include} or {extends}, and the variables it passes to them, in
+ * a single pass over the Smarty lexer's tokens.
+ */
+public class SmartyIncludeScanner
+{
+	/**
+	 * Attributes of {include} that are options rather than variables.
+	 */
+	protected static final Set<String> INCLUDE_OPTIONS = new HashSet<String>(Arrays.asList(
+		"file", "assign", "cache_id", "cache_lifetime", "caching", "compile_id", "inline", "nocache", "scope"
+	));
+
+	/**
+	 * Scan a Smarty template for included and extended templates.
+	 *
+	 * @param text    The contents of the template.
+	 * @param project The project the template is in, if any, so the lexer picks up the project's Smarty settings.
+	 *
+	 * @return Unmodifiable map of template names (normalized with SmartyTemplates.normalize()) to the names of the
+	 *         variables passed to them.
+	 */
+	@NotNull
+	public static Map<String, Set<String>> scan (@NotNull CharSequence text, @Nullable Project project)
+	{
+		ParserDefinition parser_definition = LanguageParserDefinitions.INSTANCE.forLanguage(SmartyLanguage.INSTANCE);
+
+		if (parser_definition == null)
+		{
+			return Collections.emptyMap();
+		}
+
+		Lexer lexer = parser_definition.createLexer(project);
+		lexer.start(text);
+
+		Map<String, Set<String>> templates = new HashMap<String, Set<String>>();
+
+		boolean after_tag_start = false;
+
+		for (IElementType token; (token = lexer.getTokenType()) != null; lexer.advance())
+		{
+			if (token == SmartyTokenTypes.START_TAG_START)
+			{
+				after_tag_start = true;
+				continue;
+			}
+
+			if (after_tag_start && token != TokenType.WHITE_SPACE)
+			{
+				after_tag_start = false;
+
+				boolean is_include = SmartyVariableScanner.isText(text, lexer.getTokenStart(), lexer.getTokenEnd(), "include");
+				boolean is_extends = SmartyVariableScanner.isText(text, lexer.getTokenStart(), lexer.getTokenEnd(), "extends");
+
+				if (is_include || is_extends)
+				{
+					addTemplate(templates, parseAttributes(text, lexer), is_include);
+
+					// The attributes end at the next tag, or at the first token that isn't part of the tag.
+					after_tag_start = lexer.getTokenType() == SmartyTokenTypes.START_TAG_START;
+
+					if (lexer.getTokenType() == null)
+					{
+						break;
+					}
+				}
+			}
+		}
+
+		return Collections.unmodifiableMap(templates);
+	}
+
+	/**
+	 * Add the template an {include} or {extends} tag refers to, if it's a literal template name.
+	 *
+	 * @param templates  Map of template names to passed variables to add to.
+	 * @param attributes The attributes of the tag.
+	 * @param is_include Whether the tag is an {include}, which can pass variables.
+	 */
+	protected static void addTemplate (Map<String, Set<String>> templates, Map<String, String> attributes, boolean is_include)
+	{
+		// '{include "foo.tpl"}' is short for '{include file="foo.tpl"}'.
+		String file = attributes.containsKey("file") ? attributes.get("file") : attributes.get("");
+
+		// Template names built from variables can't be resolved.
+		if (file == null || file.length() == 0 || file.indexOf('$') >= 0)
+		{
+			return;
+		}
+
+		String template = SmartyTemplates.normalize(file);
+
+		if (template.length() == 0)
+		{
+			return;
+		}
+
+		Set<String> variables = templates.get(template);
+
+		if (variables == null)
+		{
+			variables = new LinkedHashSet<String>();
+			templates.put(template, variables);
+		}
+
+		if (is_include)
+		{
+			for (String attribute : attributes.keySet())
+			{
+				if (attribute.length() > 0 && !INCLUDE_OPTIONS.contains(attribute))
+				{
+					variables.add(attribute);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parse the attributes of a tag from the lexer's tokens, up to the end of the tag (see readValue() for the values).
+	 * The first string without a name is stored under an empty name, attributes without a value get an empty value.
+	 *
+	 * @param text  The text being lexed.
+	 * @param lexer The lexer, at the tag name. Left at the first token after the tag's attributes.
+	 *
+	 * @return Map of attribute names to values.
+	 */
+	@NotNull
+	protected static Map<String, String> parseAttributes (@NotNull CharSequence text, @NotNull Lexer lexer)
+	{
+		Map<String, String> attributes = new HashMap<String, String>();
+
+		// The attribute name waiting for an '=', and the one waiting for its value.
+		String name       = null;
+		String value_name = null;
+
+		for (lexer.advance(); lexer.getTokenType() != null; lexer.advance())
+		{
+			IElementType token = lexer.getTokenType();
+			String token_text  = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+
+			if (token == SmartyTokenTypes.START_TAG_START || token == SmartyTokenTypes.END_TAG_START)
+			{
+				break;
+			}
+
+			if (token == TokenType.WHITE_SPACE)
+			{
+				continue;
+			}
+
+			if (!token.getLanguage().is(SmartyLanguage.INSTANCE))
+			{
+				break;
+			}
+
+			if (value_name != null)
+			{
+				addAttribute(attributes, value_name, readValue(text, lexer));
+				value_name = null;
+			}
+			else if (token == SmartyTokenTypes.EQ && name != null)
+			{
+				value_name = name;
+				name       = null;
+			}
+			else
+			{
+				// A name without '=' is a boolean attribute, e.g. '{include "foo.tpl" nocache}'.
+				if (name != null)
+				{
+					addAttribute(attributes, name, "");
+				}
+
+				name = token == SmartyTokenTypes.IDENTIFIER ? token_text : null;
+
+				// '{include "foo.tpl"}' notation.
+				if (token == SmartyTokenTypes.STRING_LITERAL || isQuote(token_text))
+				{
+					addAttribute(attributes, "", readValue(text, lexer));
+				}
+			}
+		}
+
+		if (name != null)
+		{
+			addAttribute(attributes, name, "");
+		}
+
+		if (value_name != null)
+		{
+			addAttribute(attributes, value_name, "");
+		}
+
+		return attributes;
+	}
+
+	protected static void addAttribute (Map<String, String> attributes, String name, String value)
+	{
+		if (!attributes.containsKey(name))
+		{
+			attributes.put(name, value);
+		}
+	}
+
+	/**
+	 * Read an attribute value. Strings lose their quotes. A string made up of several tokens, e.g. because it contains
+	 * a variable, is read up to its closing quote. Other values are kept as the text of their first token.
+	 *
+	 * @param text  The text being lexed.
+	 * @param lexer The lexer, at the first token of the value. Left at the last token of the value.
+	 *
+	 * @return The value.
+	 */
+	@NotNull
+	protected static String readValue (@NotNull CharSequence text, @NotNull Lexer lexer)
+	{
+		String token_text = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+
+		if (!isQuote(token_text))
+		{
+			return lexer.getTokenType() == SmartyTokenTypes.STRING_LITERAL ? unquote(token_text) : token_text;
+		}
+
+		int start = lexer.getTokenEnd();
+
+		for (lexer.advance(); lexer.getTokenType() != null; lexer.advance())
+		{
+			if (isText(text, lexer, token_text))
+			{
+				return text.subSequence(start, lexer.getTokenStart()).toString();
+			}
+
+			if (lexer.getTokenType() == SmartyTokenTypes.START_TAG_START || lexer.getTokenType() == SmartyTokenTypes.END_TAG_START)
+			{
+				break;
+			}
+		}
+
+		// Unterminated string.
+		return "";
+	}
+
+	protected static boolean isText (CharSequence text, Lexer lexer, String expected)
+	{
+		return SmartyVariableScanner.isText(text, lexer.getTokenStart(), lexer.getTokenEnd(), expected);
+	}
+
+	protected static boolean isQuote (String text)
+	{
+		return text.equals("\"") || text.equals("'");
+	}
+
+	protected static String unquote (String text)
+	{
+		text = text.trim();
+
+		if (text.length() > 1 && (text.charAt(0) == '"' || text.charAt(0) == '\'') && text.charAt(text.length() - 1) == text.charAt(0))
+		{
+			return text.substring(1, text.length() - 1);
+		}
+
+		return text;
+	}
+}
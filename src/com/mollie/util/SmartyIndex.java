@@ -27,443 +27,778 @@
 package com.mollie.util;
 
 import com.intellij.codeInsight.completion.PlainPrefixMatcher;
-import com.intellij.lang.ASTNode;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Caret;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.tree.TokenSet;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.IdFilter;
 import com.jetbrains.php.PhpIndex;
 import com.jetbrains.php.lang.psi.elements.*;
-import com.jetbrains.smarty.lang.SmartyTokenTypes;
-import com.jetbrains.smarty.lang.psi.*;
+import com.jetbrains.php.lang.psi.stubs.indexes.PhpFunctionNameIndex;
+import com.mollie.index.SmartyAssignIndex;
+import com.mollie.index.SmartyPluginIndex;
+import com.mollie.index.SmartyRegisteredPluginIndex;
+import com.mollie.settings.SmartySettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Static helper to find Smarty and PHP functions.
+ * Project service to find Smarty and PHP functions.
  */
 public class SmartyIndex
 {
 	protected static final Logger LOG = Logger.getInstance(SmartyIndex.class);
 
+	protected final Project project;
+
+	protected final GlobalSearchScope content_scope;
+
+	protected final CachedValue<Map<String, SmartyPluginTrie>> plugin_tries;
+
+	protected final CachedValue<List<String>> function_names;
+
+	protected final CachedValue<ConcurrentMap<String, List<PhpClassInfo>>> class_infos;
+
+	protected final CachedValue<ConcurrentMap<String, PhpConstantInfo>> constant_infos;
+
+	protected final AtomicReference<SmartySnapshot> snapshot = new AtomicReference<SmartySnapshot>(SmartySnapshot.EMPTY);
+
+	// The modification count the snapshot was taken at, see getModificationCount().
+	protected volatile long snapshot_modification_count = -1;
+
 	/**
-	 * Get a list of all the Smarty 'block' plugins in the current project.
+	 * Set up the (lazily built) caches for a project.
 	 *
 	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
+	 */
+	public SmartyIndex (final Project project)
+	{
+		this.project  = project;
+		content_scope = GlobalSearchScope.projectScope(project);
+
+		plugin_tries = CachedValuesManager.getManager(project).createCachedValue(
+			new CachedValueProvider<Map<String, SmartyPluginTrie>>()
+			{
+				@Nullable
+				public Result<Map<String, SmartyPluginTrie>> compute ()
+				{
+					return Result.create(buildPluginTries(), PhpModificationTracker.getInstance(project).getRegisteredPluginsTracker(), SmartySettings.getInstance(project));
+				}
+			},
+			false
+		);
+
+		function_names = CachedValuesManager.getManager(project).createCachedValue(
+			new CachedValueProvider<List<String>>()
+			{
+				@Nullable
+				public Result<List<String>> compute ()
+				{
+					return Result.create(buildFunctionNames(), PhpModificationTracker.getInstance(project));
+				}
+			},
+			false
+		);
+
+		class_infos    = createStructureCache(project);
+		constant_infos = createStructureCache(project);
+	}
+
+	/**
+	 * Create an (initially empty) cache that's cleared whenever the PHP code of the project changes. Editing Smarty
+	 * templates leaves it alone.
 	 *
-	 * @return List of all Smarty 'block' plugins.
+	 * @param project The project to watch.
+	 *
+	 * @return The cache.
 	 */
-	public static Collection<String> getSmartyBlockPluginNames (Project project, String prefix)
+	protected static <K, V> CachedValue<ConcurrentMap<K, V>> createStructureCache (final Project project)
 	{
-		return getSmartyPluginNamesOfType(project, prefix, "block");
+		return CachedValuesManager.getManager(project).createCachedValue(
+			new CachedValueProvider<ConcurrentMap<K, V>>()
+			{
+				@Nullable
+				public Result<ConcurrentMap<K, V>> compute ()
+				{
+					return Result.<ConcurrentMap<K, V>>create(new ConcurrentHashMap<K, V>(), PhpModificationTracker.getInstance(project));
+				}
+			},
+			false
+		);
 	}
 
 	/**
-	 * Get a list of all the Smarty 'function' plugins in the current project.
+	 * Get the SmartyIndex of a project.
 	 *
 	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
 	 *
-	 * @return List of all Smarty 'function' plugins.
+	 * @return The SmartyIndex service.
 	 */
-	public static Collection<String> getSmartyFunctionPluginNames (Project project, String prefix)
+	public static SmartyIndex getInstance (@NotNull Project project)
 	{
-		return getSmartyPluginNamesOfType(project, prefix, "function");
+		return ServiceManager.getService(project, SmartyIndex.class);
 	}
 
 	/**
-	 * Get a list of all the Smarty 'modifier' plugins in the current project.
+	 * Check if the project is being indexed, so only the snapshot can be used.
 	 *
-	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
+	 * @return True if the indexes are unavailable.
+	 */
+	public boolean isDumb ()
+	{
+		return DumbService.isDumb(project);
+	}
+
+	/**
+	 * Take a new snapshot of the Smarty plugin and PHP symbol names, to be used while the project is being indexed.
+	 * Class and constant descriptions are only copied if they're already cached, so this never resolves any. The
+	 * snapshot is only swapped in once it's complete. Must be called in a read action, while the project is not being
+	 * indexed.
+	 */
+	public void updateSnapshot ()
+	{
+		// Read the count first, so changes made while taking the snapshot make it out of date.
+		long modification_count = getModificationCount();
+
+		PhpIndex php_index          = PhpIndex.getInstance(project);
+		List<String> class_names    = new ArrayList<String>(php_index.getAllClassNames(new PlainPrefixMatcher("")));
+		List<String> constant_names = new ArrayList<String>(php_index.getAllConstantNames(new PlainPrefixMatcher("")));
+
+		snapshot.set(
+			new SmartySnapshot(
+				plugin_tries.getValue(),
+				function_names.getValue(),
+				class_names,
+				new HashMap<String, List<PhpClassInfo>>(class_infos.getValue()),
+				constant_names,
+				new HashMap<String, PhpConstantInfo>(constant_infos.getValue())
+			)
+		);
+		snapshot_modification_count = modification_count;
+	}
+
+	/**
+	 * Check if the PHP code or the Smarty settings changed since the last snapshot was taken.
 	 *
-	 * @return List of all Smarty 'modifier' plugins.
+	 * @return True if there's no snapshot yet, or it's out of date.
 	 */
-	public static Collection<String> getSmartyModifierPluginNames (Project project, String prefix)
+	public boolean isSnapshotOutdated ()
 	{
-		return getSmartyPluginNamesOfType(project, prefix, "modifier");
+		return snapshot_modification_count != getModificationCount();
 	}
 
 	/**
-	 * Get a list of all the Smarty plugins of a given type in the current project. Strips off the "smarty_*_" part.
+	 * Count changes to everything the snapshot is built from. Both counts only go up, so their sum changes whenever
+	 * either of them does.
 	 *
-	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
-	 * @param type    The type of Smarty plugin we're looking for.
+	 * @return The modification count.
+	 */
+	protected long getModificationCount ()
+	{
+		return PhpModificationTracker.getInstance(project).getRegisteredPluginsTracker().getModificationCount() + SmartySettings.getInstance(project).getModificationCount();
+	}
+
+	/**
+	 * Get a list of all the Smarty plugins of a given type in the current project, without the "smarty_*_" part. The
+	 * returned list is shared and must not be modified.
+	 *
+	 * @param prefix Optionally filter the list by a prefix (case insensitive).
+	 * @param type   The type of Smarty plugin we're looking for.
 	 *
 	 * @return List of all Smarty plugins of a given type.
 	 */
-	protected static Collection<String> getSmartyPluginNamesOfType (Project project, String prefix, String type)
+	protected Collection<String> getSmartyPluginNamesOfType (String prefix, String type)
 	{
-		String smarty_prefix = "smarty_" + type + "_";
+		SmartyPluginTrie trie = getPluginTries().get(type);
 
-		Collection<String> plugins = PhpIndex.getInstance(project).getAllFunctionNames(
-			new PlainPrefixMatcher(smarty_prefix + prefix)
-			{
-				public boolean prefixMatches (@NotNull String name)
-				{
-					return StringUtil.startsWithIgnoreCase(name, getPrefix());
-				}
-			}
-		);
+		if (trie == null)
+		{
+			return Collections.emptyList();
+		}
 
-		// Strip off "smarty_*_" before we return the list.
-		Collection<String> stripped_plugins = new ArrayList<String>();
+		return trie.getNamesWithPrefix(prefix == null ? "" : prefix);
+	}
+
+	/**
+	 * Check if there's a Smarty 'block' plugin with a given name in the current project.
+	 *
+	 * @param name The name of the plugin (case insensitive).
+	 *
+	 * @return True if the block plugin exists.
+	 */
+	public boolean isBlockPlugin (@NotNull String name)
+	{
+		return isSmartyPlugin("block", name);
+	}
 
-		for (String plugin : plugins)
+	/**
+	 * Check if there's a Smarty plugin of a given type and name in the current project. This is a hash lookup in the
+	 * cached plugin names.
+	 *
+	 * @param type The type of Smarty plugin we're looking for.
+	 * @param name The name of the plugin (case insensitive).
+	 *
+	 * @return True if the plugin exists.
+	 */
+	public boolean isSmartyPlugin (String type, @NotNull String name)
+	{
+		SmartyPluginTrie trie = getPluginTries().get(type);
+
+		return trie != null && trie.contains(name);
+	}
+
+	/**
+	 * Pass all the Smarty plugins of a given type in the current project to a processor, without the "smarty_*_" part.
+	 * Stops as soon as the processor returns false.
+	 *
+	 * @param type      The type of Smarty plugin we're looking for.
+	 * @param prefix    Optionally filter the plugins by a prefix (case insensitive).
+	 * @param processor The processor to pass the plugin names to.
+	 *
+	 * @return False if the processor stopped early, true otherwise.
+	 */
+	public boolean processSmartyPluginNames (String type, String prefix, Processor<String> processor)
+	{
+		for (String name : getSmartyPluginNamesOfType(prefix, type))
 		{
-			stripped_plugins.add(plugin.substring(smarty_prefix.length()));
+			ProgressManager.checkCanceled();
+
+			if (!processor.process(name))
+			{
+				return false;
+			}
 		}
 
-		return stripped_plugins;
+		return true;
 	}
 
 	/**
-	 * Get a list of all the variables defined in a given Smarty file.
+	 * Get the prefix tries of plugin names. These come from the last snapshot while the project is being indexed.
 	 *
-	 * @param editor The current editor.
-	 * @param file   The file to look in.
+	 * @return Map of plugin type to trie.
+	 */
+	protected Map<String, SmartyPluginTrie> getPluginTries ()
+	{
+		return isDumb() ? snapshot.get().getPluginTries() : plugin_tries.getValue();
+	}
+
+	/**
+	 * Build a prefix trie of plugin names for every type of Smarty plugin in the project. Plugins are found by their
+	 * function names, their file names and by registerPlugin() calls.
 	 *
-	 * @return List of all defined variables.
+	 * @return Map of plugin type to trie.
 	 */
-	public static Collection<String> getSmartyVariables (Editor editor, PsiFile file)
+	protected Map<String, SmartyPluginTrie> buildPluginTries ()
 	{
-		Collection<String> variables = new ArrayList<String>();
-		String variable;
+		Collection<String> keys = getPluginKeys(SmartyPluginIndex.NAME);
+		keys.addAll(getPluginKeys(SmartyRegisteredPluginIndex.NAME));
+		keys.addAll(SmartyPluginFiles.getPluginKeys(project));
+
+		Map<String, Collection<String>> plugins = new HashMap<String, Collection<String>>();
 
-		PsiElement[] root_elements = file.getChildren();
+		for (String type : SmartyPluginIndex.PLUGIN_TYPES)
+		{
+			plugins.put(type, new ArrayList<String>());
+		}
 
-		// Look for tags (there are no nested tags - all tags are currently a child of a Smarty file).
-		for (PsiElement root_element : root_elements)
+		for (String key : keys)
 		{
-			if (!(root_element instanceof SmartyTag))
+			int separator = key.indexOf('.');
+
+			if (separator > 0 && plugins.containsKey(key.substring(0, separator)))
 			{
-				continue;
+				plugins.get(key.substring(0, separator)).add(key.substring(separator + 1));
 			}
+		}
 
-			// Look for dollars.
-			for (ASTNode dollar : root_element.getNode().getChildren(TokenSet.create(SmartyTokenTypes.DOLLAR)))
-			{
-				variable = getVariableName(dollar.getPsi().getNextSibling().getText());
+		Map<String, SmartyPluginTrie> tries = new HashMap<String, SmartyPluginTrie>();
 
-				if (variable.length() > 0 && !variables.contains(variable))
-				{
-					boolean is_being_typed = false;
+		for (Map.Entry<String, Collection<String>> entry : plugins.entrySet())
+		{
+			tries.put(entry.getKey(), new SmartyPluginTrie(entry.getValue()));
+		}
 
-					for (Caret caret : editor.getCaretModel().getAllCarets())
-					{
-						PsiElement element_at_caret = file.findElementAt(caret.getOffset() - 1);
+		return Collections.unmodifiableMap(tries);
+	}
 
-						if (element_at_caret != null && variable.equals(element_at_caret.getText()))
-						{
-							is_being_typed = true;
-						}
-					}
+	/**
+	 * Get the plugin keys (e.g. "block.foo") in one of the plugin indexes.
+	 *
+	 * @param index_name The index to look in.
+	 *
+	 * @return The keys of all plugins in the index.
+	 */
+	protected Collection<String> getPluginKeys (ID<String, ?> index_name)
+	{
+		final Collection<String> keys = new ArrayList<String>();
 
-					if (!is_being_typed)
-					{
-						variables.add(variable);
-					}
+		FileBasedIndex index    = FileBasedIndex.getInstance();
+		GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+
+		// Only plugin keys live in these indexes, so this doesn't touch any of the other PHP functions.
+		index.processAllKeys(
+			index_name,
+			new Processor<String>()
+			{
+				public boolean process (String key)
+				{
+					keys.add(key);
+					return true;
 				}
-			}
+			},
+			scope,
+			null
+		);
 
-			// Look for assignments.
-			ASTNode first_leaf = root_element.getNode().findLeafElementAt(1);
+		// Skip keys of files that no longer exist.
+		Collection<String> existing_keys = new ArrayList<String>();
 
-			if (first_leaf == null
-				|| first_leaf.getElementType() != SmartyTokenTypes.PREDEFINED_FUNCTION
-				|| !first_leaf.getText().equals("assign"))
+		for (String key : keys)
+		{
+			if (!index.getContainingFiles(index_name, key, scope).isEmpty())
 			{
-				continue;
+				existing_keys.add(key);
 			}
+		}
 
-			// We've found an assignment. Look for the first attribute (which contains the variable name).
-			PsiElement[] attributes = root_element.getChildren();
+		return existing_keys;
+	}
 
-			if (attributes.length == 0 || !(attributes[0] instanceof SmartyAttribute))
+	/**
+	 * Pass all the variables visible in a given Smarty file to a processor, except for the ones that are being typed.
+	 * This includes the variables the file gets from the templates that include it. Stops as soon as the processor
+	 * returns false.
+	 *
+	 * @param editor    The current editor.
+	 * @param file      The file to look in.
+	 * @param processor The processor to pass the variables to.
+	 *
+	 * @return False if the processor stopped early, true otherwise.
+	 */
+	public boolean processSmartyVariables (Editor editor, PsiFile file, Processor<String> processor)
+	{
+		// Collect the words at the carets once, rather than for every variable.
+		Set<String> typed_words = new HashSet<String>();
+
+		for (Caret caret : editor.getCaretModel().getAllCarets())
+		{
+			PsiElement element_at_caret = file.findElementAt(caret.getOffset() - 1);
+
+			if (element_at_caret != null)
 			{
-				continue;
+				typed_words.add(element_at_caret.getText());
 			}
+		}
 
-			// We've found an attribute.
-			PsiElement attribute = attributes[0];
+		for (String variable : SmartyIncludeGraph.getInstance(project).getVisibleVariables(file))
+		{
+			if (!typed_words.contains(variable) && !processor.process(variable))
+			{
+				return false;
+			}
+		}
 
-			// '{assign "variable_name" value}' notation. TODO: support expressions as well.
-			ASTNode variable_node = attribute.getNode().findChildByType(SmartyTokenTypes.STRING_LITERAL);
+		return true;
+	}
 
-			if (variable_node != null)
+	/**
+	 * Get all the variables defined in a given Smarty file. The result is cached until the file changes.
+	 *
+	 * @param file The file to look in.
+	 *
+	 * @return Unmodifiable set of all defined variables.
+	 */
+	public Set<String> getSmartyVariables (final PsiFile file)
+	{
+		return CachedValuesManager.getCachedValue(
+			file,
+			new CachedValueProvider<Set<String>>()
 			{
-				variable = getVariableName(variable_node.getText());
-
-				if (variable.length() > 0 && !variables.contains(variable))
+				@Nullable
+				public Result<Set<String>> compute ()
 				{
-					variables.add(variable);
+					return Result.create(SmartyVariableScanner.scan(file.getViewProvider().getContents(), file.getProject()), file);
 				}
-
-				continue;
 			}
+		);
+	}
 
-			// '{assign name="variable_name" value=value}' notation.
-			PsiElement[] attribute_children = attribute.getChildren();
+	/**
+	 * Get the variables PHP code assigns to a given Smarty file, with their types (or an empty string if the type is
+	 * unknown).
+	 *
+	 * @param file The Smarty file.
+	 *
+	 * @return Map of variable names to types.
+	 */
+	public Map<String, String> getAssignedVariables (PsiFile file)
+	{
+		VirtualFile virtual_file            = file.getOriginalFile().getVirtualFile();
+		final Map<String, String> variables = new HashMap<String, String>();
 
-			if (attribute_children.length == 1)
-			{
-				ASTNode attribute_value = attribute_children[0].getNode();
+		// The assignments come from an index, so they're unknown while the project is being indexed.
+		if (virtual_file == null || isDumb())
+		{
+			return variables;
+		}
 
-				if (attribute_value.getElementType() == SmartyCompositeElementTypes.ATTRIBUTE_VALUE)
+		SmartyTemplates.processValues(
+			SmartyAssignIndex.NAME,
+			virtual_file,
+			content_scope,
+			new FileBasedIndex.ValueProcessor<Map<String, String>>()
+			{
+				public boolean process (VirtualFile source, Map<String, String> template_variables)
 				{
-					variable_node = attribute_value.findChildByType(SmartyTokenTypes.STRING_LITERAL);
-
-					if (variable_node != null)
+					for (Map.Entry<String, String> variable : template_variables.entrySet())
 					{
-						variable = variable_node.getText().trim();
-
-						if (variable.length() > 0 && !variables.contains(variable))
+						// Prefer a known type over an unknown one.
+						if (!variables.containsKey(variable.getKey()) || variables.get(variable.getKey()).length() == 0)
 						{
-							variables.add(variable);
+							variables.put(variable.getKey(), variable.getValue());
 						}
 					}
+
+					return true;
 				}
 			}
-		}
+		);
 
 		return variables;
 	}
 
-    /**
-     * See if a given string is or starts with a valid variable. Return an empty string otherwise.
-     *
-     * @param potential_variable The string to look in.
-     *
-     * @return The variable, or an empty string if there is none.
-     */
-    protected static String getVariableName (String potential_variable)
-    {
-        // Strip everything from the first disallowed character.
-        String variable = potential_variable.trim().replaceFirst("[^a-zA-Z0-9_].*$", "");
-
-        // First character can't be a number.
-        if (!variable.substring(0, 1).matches("[a-zA-Z_]"))
-        {
-            return "";
-        }
-
-        return variable;
-    }
+	/**
+	 * Pass the names of all the regular PHP functions (excluding Smarty functions) in the current project to a
+	 * processor. PHP API and library functions are left out. The names are cached until the PHP code of the project
+	 * changes. Stops as soon as the processor returns false.
+	 *
+	 * @param prefix    Optionally filter the functions by a prefix.
+	 * @param processor The processor to pass the function names to.
+	 *
+	 * @return False if the processor stopped early, true otherwise.
+	 */
+	public boolean processPHPFunctionNames (final String prefix, final Processor<String> processor)
+	{
+		List<String> names = isDumb() ? snapshot.get().getFunctionNames() : function_names.getValue();
+
+		for (String name : names)
+		{
+			ProgressManager.checkCanceled();
+
+			if (StringUtil.containsIgnoreCase(name, prefix) && !processor.process(name))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Collect the names of all the regular PHP functions (excluding Smarty functions) defined in the project's own
+	 * content. The project IdFilter leaves out the keys that only occur in the PHP API stubs and libraries.
+	 *
+	 * @return Sorted list of function names.
+	 */
+	protected List<String> buildFunctionNames ()
+	{
+		final List<String> names = new ArrayList<String>();
+
+		StubIndex.getInstance().processAllKeys(
+			PhpFunctionNameIndex.KEY,
+			new Processor<String>()
+			{
+				public boolean process (String name)
+				{
+					ProgressManager.checkCanceled();
+
+					// Ignore smarty_* functions.
+					if (StringUtil.startsWithIgnoreCase(name, "smarty_"))
+					{
+						return true;
+					}
+
+					names.add(name);
+
+					return true;
+				}
+			},
+			content_scope,
+			IdFilter.getProjectIdFilter(project, false)
+		);
+
+		Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+
+		return Collections.unmodifiableList(names);
+	}
 
 	/**
-	 * Get a list of all the regular PHP functions (excluding Smarty functions) in the current project.
+	 * Pass all the PHP classes in the current project to a processor. Classes sharing a short name are passed
+	 * separately. Stops as soon as the processor returns false.
 	 *
-	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
+	 * @param prefix    Optionally filter the classes by a prefix.
+	 * @param processor The processor to pass the classes to.
 	 *
-	 * @return List of all available PHP functions.
+	 * @return False if the processor stopped early, true otherwise.
 	 */
-	public static Collection<Function> getPHPFunctions (Project project, String prefix)
+	public boolean processPHPClasses (String prefix, Processor<PhpClassInfo> processor)
 	{
-		// Collect all PHP functions, except for smarty_* functions.
-		Collection<String> function_names = PhpIndex.getInstance(project).getAllFunctionNames(
-			new PlainPrefixMatcher(prefix)
+		if (isDumb())
+		{
+			PlainPrefixMatcher matcher = new PlainPrefixMatcher(prefix);
+			SmartySnapshot current     = snapshot.get();
+
+			for (String class_name : current.getClassNames())
 			{
-				public boolean prefixMatches (@NotNull String name)
+				ProgressManager.checkCanceled();
+
+				if (!matcher.prefixMatches(class_name))
+				{
+					continue;
+				}
+
+				List<PhpClassInfo> infos = current.getClassInfos(class_name);
+
+				for (PhpClassInfo class_info : infos != null ? infos : Collections.singletonList(PhpClassInfo.of(class_name)))
 				{
-					return (
-						!StringUtil.startsWithIgnoreCase(name, "smarty_") // Ignore smarty_* functions.
-						&& StringUtil.containsIgnoreCase(name, getPrefix())
-					);
+					if (!processor.process(class_info))
+					{
+						return false;
+					}
 				}
 			}
-		);
 
-		Collection<Function> php_functions = new ArrayList<Function>();
+			return true;
+		}
+
+		Collection<String> class_names = PhpIndex.getInstance(project).getAllClassNames(new PlainPrefixMatcher(prefix));
 
-		for (String function_name : function_names)
+		for (String class_name : class_names)
 		{
-			Function php_function = getCustomPHPFunctionByName(project, function_name);
+			ProgressManager.checkCanceled();
 
-			if (php_function != null)
+			for (PhpClassInfo class_info : getPHPClassInfos(class_name))
 			{
-				php_functions.add(php_function);
+				if (!processor.process(class_info))
+				{
+					return false;
+				}
 			}
 		}
 
-		return php_functions;
+		return true;
 	}
 
 	/**
-	 * Get a list of all the PHP classes in the current project.
+	 * Get descriptions of all the PHP classes with a given short name. The descriptions are cached until the PHP code
+	 * of the project changes. A cache miss only reads the classes' stubs, never their syntax trees.
 	 *
-	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
+	 * @param class_name The short class name to look for.
 	 *
-	 * @return List of all available PHP classes.
+	 * @return List of class descriptions.
 	 */
-	public static Collection<PhpClass> getPHPClasses (Project project, String prefix)
+	@NotNull
+	public List<PhpClassInfo> getPHPClassInfos (String class_name)
 	{
-		Collection<String> class_names = PhpIndex.getInstance(project).getAllClassNames(new PlainPrefixMatcher(prefix));
-
-		Collection<PhpClass> php_classes = new ArrayList<PhpClass>();
+		ConcurrentMap<String, List<PhpClassInfo>> cache = class_infos.getValue();
+		List<PhpClassInfo> infos                        = cache.get(class_name);
 
-		for (String class_name : class_names)
+		if (infos == null)
 		{
-			PhpClass php_class = getPHPClassByName(project, class_name);
+			Collection<PhpClass> php_classes = PhpIndex.getInstance(project).getClassesByName(class_name);
+			infos                            = new ArrayList<PhpClassInfo>(php_classes.size());
 
-			if (php_class != null)
+			for (PhpClass php_class : php_classes)
 			{
-				php_classes.add(php_class);
+				infos.add(PhpClassInfo.of(php_class));
 			}
+
+			infos = Collections.unmodifiableList(infos);
+			cache.put(class_name, infos);
 		}
 
-		return php_classes;
+		return infos;
 	}
 
 	/**
-	 * Get a list of all the PHP constants in the current project.
+	 * Pass all the PHP constants in the current project to a processor. Stops as soon as the processor returns false.
 	 *
-	 * @param project The project to look in.
-	 * @param prefix  Optionally filter the list by a prefix.
+	 * @param prefix    Optionally filter the constants by a prefix.
+	 * @param processor The processor to pass the constants to.
 	 *
-	 * @return List of all available PHP constants.
+	 * @return False if the processor stopped early, true otherwise.
 	 */
-	public static Collection<Constant> getPHPConstants (Project project, String prefix)
+	public boolean processPHPConstants (String prefix, Processor<PhpConstantInfo> processor)
 	{
-		Collection<String> constant_names = PhpIndex.getInstance(project).getAllConstantNames(new PlainPrefixMatcher(prefix));
+		if (isDumb())
+		{
+			PlainPrefixMatcher matcher = new PlainPrefixMatcher(prefix);
+			SmartySnapshot current     = snapshot.get();
+
+			for (String constant_name : current.getConstantNames())
+			{
+				ProgressManager.checkCanceled();
+
+				if (!matcher.prefixMatches(constant_name))
+				{
+					continue;
+				}
+
+				PhpConstantInfo constant_info = current.getConstantInfo(constant_name);
+
+				if (!processor.process(constant_info != null ? constant_info : PhpConstantInfo.of(constant_name)))
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
 
-		Collection<Constant> php_constants = new ArrayList<Constant>();
+		Collection<String> constant_names = PhpIndex.getInstance(project).getAllConstantNames(new PlainPrefixMatcher(prefix));
 
 		for (String constant_name : constant_names)
 		{
-			Constant php_constant = getPHPConstantByName(project, constant_name);
+			ProgressManager.checkCanceled();
+
+			PhpConstantInfo constant_info = getPHPConstantInfo(constant_name);
 
-			if (php_constant != null)
+			if (constant_info != null && !processor.process(constant_info))
 			{
-				php_constants.add(php_constant);
+				return false;
 			}
 		}
 
-		return php_constants;
+		return true;
 	}
 
 	/**
-	 * Get a PHP function by name. Return the first one we can find if there's more than one.
+	 * Get the type and value of a PHP constant. These are resolved once and cached until the PHP structure of the
+	 * project changes, so repeated suggestions only cost a map lookup.
 	 *
-	 * @param project       The project to look in.
-	 * @param function_name The full function name to look for.
+	 * @param constant_name The constant name to look for.
 	 *
-	 * @return The PHP function object, or NULL.
+	 * @return The constant description, or NULL if there's no such constant.
 	 */
 	@Nullable
-	public static Function getPHPFunctionByName (Project project, String function_name)
+	public PhpConstantInfo getPHPConstantInfo (String constant_name)
 	{
-		Collection<Function> matching_functions = PhpIndex.getInstance(project).getFunctionsByName(function_name);
+		ConcurrentMap<String, PhpConstantInfo> cache = constant_infos.getValue();
+		PhpConstantInfo constant_info                = cache.get(constant_name);
 
-		if (matching_functions.size() > 0)
+		if (constant_info == null)
 		{
-			// Just grab the first function.
-			return (Function) matching_functions.toArray()[0];
+			Constant php_constant = getPHPConstantByName(constant_name);
+
+			if (php_constant == null)
+			{
+				return null;
+			}
+
+			constant_info = PhpConstantInfo.of(php_constant);
+			cache.put(constant_name, constant_info);
 		}
 
-		return null;
+		return constant_info;
 	}
 
 	/**
 	 * Get a custom (non-API) PHP function by name. Return the first one we can find if there's more than one.
 	 *
-	 * @param project       The project to look in.
 	 * @param function_name The full function name to look for.
 	 *
 	 * @return The PHP function object, or NULL.
 	 */
 	@Nullable
-	public static Function getCustomPHPFunctionByName (Project project, String function_name)
+	public Function getCustomPHPFunctionByName (String function_name)
 	{
-		Function php_function = getPHPFunctionByName(project, function_name);
-
 		// Make sure we aren't listing any PHP API functions.
-		if (php_function != null && php_function.getContainingFile().isWritable())
+		for (Function php_function : PhpIndex.getInstance(project).getFunctionsByName(function_name))
 		{
-			return php_function;
+			if (content_scope.contains(php_function.getContainingFile().getVirtualFile()))
+			{
+				return php_function;
+			}
 		}
 
 		return null;
 	}
 
 	/**
-	 * Get a PHP class by name.
+	 * Get a PHP class by name. Namespaced names are looked up by their fully qualified name.
 	 *
-	 * @param project    The project to look in.
 	 * @param class_name The class name to look for.
 	 *
 	 * @return The PHP class object, or NULL.
 	 */
 	@Nullable
-	public static PhpClass getPHPClassByName (Project project, String class_name)
+	public PhpClass getPHPClassByName (String class_name)
 	{
-		return PhpIndex.getInstance(project).getClassByName(class_name);
+		PhpIndex php_index = PhpIndex.getInstance(project);
+
+		if (class_name.indexOf('\\') < 0)
+		{
+			return php_index.getClassByName(class_name);
+		}
+
+		Collection<PhpClass> php_classes = php_index.getClassesByFQN(class_name.startsWith("\\") ? class_name : "\\" + class_name);
+
+		return php_classes.isEmpty() ? null : php_classes.iterator().next();
 	}
 
 	/**
-	 * Get the constants of a given PhpClass object.
+	 * Get the constants of a given PhpClass object, including the ones of its parents, interfaces and traits.
 	 *
 	 * @param php_class The PhpClass object to look in.
 	 *
 	 * @return A collection of Field objects.
 	 */
-	public static Collection<Field> getConstantsOfPHPClass (PhpClass php_class)
+	public Collection<Field> getConstantsOfPHPClass (PhpClass php_class)
 	{
-		Collection<Field> constants = new ArrayList<Field>();
-
-		for (Field field : php_class.getFields())
-		{
-			if (field.isConstant())
-			{
-				constants.add(field);
-			}
-		}
-
-		return constants;
+		return PhpStaticMembers.of(php_class).getConstants();
 	}
 
 	/**
-	 * Get the static methods of a given PhpClass object.
+	 * Get the static methods of a given PhpClass object, including the ones of its parents and traits.
 	 *
 	 * @param php_class The PhpClass object to look in.
 	 *
 	 * @return A collection of Method objects.
 	 */
-	public static Collection<Method> getStaticMethodsOfPHPClass (PhpClass php_class)
+	public Collection<Method> getStaticMethodsOfPHPClass (PhpClass php_class)
 	{
-		Collection<Method> static_methods = new ArrayList<Method>();
-
-		for (Method method : php_class.getMethods())
-		{
-			if (method.isStatic())
-			{
-				static_methods.add(method);
-			}
-		}
-
-		return static_methods;
+		return PhpStaticMembers.of(php_class).getStaticMethods();
 	}
 
 	/**
 	 * Get a PHP constant by name. Return the first one we can find if there's more than one.
 	 *
-	 * @param project       The project to look in.
 	 * @param constant_name The constant name to look for.
 	 *
 	 * @return The PHP constant object, or NULL.
 	 */
 	@Nullable
-	public static Constant getPHPConstantByName (Project project, String constant_name)
+	public Constant getPHPConstantByName (String constant_name)
 	{
 		Collection<Constant> matching_constants = PhpIndex.getInstance(project).getConstantsByName(constant_name);
 
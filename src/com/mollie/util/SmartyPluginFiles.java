@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.GlobalSearchScopesCore;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.mollie.index.SmartyPluginFileIndex;
+import com.mollie.index.SmartyPluginIndex;
+import com.mollie.settings.SmartySettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Finds Smarty plugins by their file name, following the naming convention Smarty uses to load plugins from its
+ * plugins_dir: "block.foo.php", "function.foo.php" and "modifier.foo.php". The files are found through
+ * SmartyPluginFileIndex, which only looks at file names, so this also finds plugins whose functions haven't been
+ * indexed yet.
+ *
+ * By default plugin files are found anywhere in the project and its libraries. If plugin directories are configured
+ * in the project's Smarty settings, only the files directly in those directories count, just like Smarty loads them.
+ */
+public class SmartyPluginFiles
+{
+	/**
+	 * Get the plugin index keys (e.g. "block.foo") of all the plugin files, or of the ones in the configured plugin
+	 * directories if there are any.
+	 *
+	 * @param project The project to look in.
+	 *
+	 * @return The keys of all plugin files.
+	 */
+	@NotNull
+	public static Collection<String> getPluginKeys (@NotNull Project project)
+	{
+		Collection<VirtualFile> plugin_dirs = getPluginDirs(project);
+		Collection<String> keys             = new ArrayList<String>();
+
+		FileBasedIndex index    = FileBasedIndex.getInstance();
+		GlobalSearchScope scope = plugin_dirs.isEmpty()
+			? GlobalSearchScope.allScope(project)
+			: GlobalSearchScopesCore.directoriesScope(project, false, plugin_dirs.toArray(new VirtualFile[plugin_dirs.size()]));
+
+		// Also skips keys of files that no longer exist.
+		for (String key : index.getAllKeys(SmartyPluginFileIndex.NAME, project))
+		{
+			if (!index.getContainingFiles(SmartyPluginFileIndex.NAME, key, scope).isEmpty())
+			{
+				keys.add(key);
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Get the plugin index key for a file name, if the file is a Smarty plugin.
+	 *
+	 * @param file_name The file name, e.g. "block.foo.php".
+	 *
+	 * @return The index key, e.g. "block.foo", or NULL if the file isn't a Smarty plugin.
+	 */
+	@Nullable
+	public static String getKeyForFileName (@NotNull String file_name)
+	{
+		if (!file_name.endsWith(".php"))
+		{
+			return null;
+		}
+
+		String[] parts = file_name.split("\\.");
+
+		if (parts.length != 3 || parts[1].length() == 0)
+		{
+			return null;
+		}
+
+		for (String type : SmartyPluginIndex.PLUGIN_TYPES)
+		{
+			if (type.equals(parts[0]))
+			{
+				return SmartyPluginIndex.getKey(type, parts[1]);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Get the plugin directories configured in the project's Smarty settings that exist. Only directories in the
+	 * project or its libraries are indexed, so plugin files elsewhere aren't found.
+	 *
+	 * @param project The project to look in.
+	 *
+	 * @return The plugin directories.
+	 */
+	@NotNull
+	protected static Collection<VirtualFile> getPluginDirs (@NotNull Project project)
+	{
+		Collection<VirtualFile> plugin_dirs = new ArrayList<VirtualFile>();
+		VirtualFile base_dir                = project.getBaseDir();
+
+		for (String path : SmartySettings.getInstance(project).getPluginDirs())
+		{
+			VirtualFile plugin_dir = new File(path).isAbsolute() || base_dir == null
+				? LocalFileSystem.getInstance().findFileByPath(path)
+				: base_dir.findFileByRelativePath(path);
+
+			if (plugin_dir != null && plugin_dir.isDirectory())
+			{
+				plugin_dirs.add(plugin_dir);
+			}
+		}
+
+		return plugin_dirs;
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Immutable, case insensitive prefix tree of Smarty plugin names. Every node holds a view of the (sorted) names that
+ * start with the node's prefix, so a lookup costs O(length of the prefix) and doesn't allocate anything. Exact name
+ * lookups go through a hash set.
+ */
+public class SmartyPluginTrie
+{
+	public static final SmartyPluginTrie EMPTY = new SmartyPluginTrie(Collections.<String>emptyList());
+
+	protected final Set<String> lowercase_names;
+	protected final Node root;
+
+	/**
+	 * Build a trie from a collection of plugin names. Names that only differ in case are only added once.
+	 *
+	 * @param names The plugin names, in any order.
+	 */
+	public SmartyPluginTrie (Collection<String> names)
+	{
+		Set<String> unique_names = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		unique_names.addAll(names);
+
+		String[] sorted_names = unique_names.toArray(new String[unique_names.size()]);
+
+		this.lowercase_names = new HashSet<String>(sorted_names.length * 2);
+		this.root            = buildNode(Collections.unmodifiableList(Arrays.asList(sorted_names)), 0, sorted_names.length, 0);
+
+		for (String name : sorted_names)
+		{
+			lowercase_names.add(name.toLowerCase());
+		}
+	}
+
+	/**
+	 * Check if a name is in this trie, ignoring case.
+	 *
+	 * @param name The name to look for.
+	 *
+	 * @return True if the name is in this trie.
+	 */
+	public boolean contains (@NotNull String name)
+	{
+		return lowercase_names.contains(name.toLowerCase());
+	}
+
+	/**
+	 * Get all the names starting with a given prefix, ignoring case.
+	 *
+	 * @param prefix The prefix to look for. An empty prefix matches all names.
+	 *
+	 * @return Unmodifiable list of matching names, sorted case insensitively.
+	 */
+	@NotNull
+	public List<String> getNamesWithPrefix (@NotNull String prefix)
+	{
+		Node node = root;
+
+		for (int i = 0; i < prefix.length() && node != null; i++)
+		{
+			node = node.getChild(fold(prefix.charAt(i)));
+		}
+
+		return node == null ? Collections.<String>emptyList() : node.matches;
+	}
+
+	/**
+	 * Recursively build the node for all names in [from, to), which share their first depth characters.
+	 *
+	 * @param names The sorted list of names.
+	 * @param from  First name of the range (inclusive).
+	 * @param to    Last name of the range (exclusive).
+	 * @param depth The length of the common prefix.
+	 *
+	 * @return The node.
+	 */
+	protected static Node buildNode (List<String> names, int from, int to, int depth)
+	{
+		// Names that end at this depth are sorted first, skip them.
+		int start = from;
+
+		while (start < to && names.get(start).length() <= depth)
+		{
+			start++;
+		}
+
+		// Group the remaining names by their next character.
+		List<Character> chars = new ArrayList<Character>();
+		List<Node> children   = new ArrayList<Node>();
+
+		while (start < to)
+		{
+			char c  = fold(names.get(start).charAt(depth));
+			int end = start + 1;
+
+			while (end < to && fold(names.get(end).charAt(depth)) == c)
+			{
+				end++;
+			}
+
+			chars.add(c);
+			children.add(buildNode(names, start, end, depth + 1));
+
+			start = end;
+		}
+
+		char[] child_chars = new char[chars.size()];
+
+		for (int i = 0; i < child_chars.length; i++)
+		{
+			child_chars[i] = chars.get(i);
+		}
+
+		return new Node(child_chars, children.toArray(new Node[children.size()]), names.subList(from, to));
+	}
+
+	/**
+	 * Fold a character the same way String.CASE_INSENSITIVE_ORDER does, so groups of children stay sorted.
+	 *
+	 * @param c The character to fold.
+	 *
+	 * @return The folded character.
+	 */
+	protected static char fold (char c)
+	{
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	protected static class Node
+	{
+		protected final char[] chars;
+		protected final Node[] children;
+		protected final List<String> matches;
+
+		protected Node (char[] chars, Node[] children, List<String> matches)
+		{
+			this.chars    = chars;
+			this.children = children;
+			this.matches  = matches;
+		}
+
+		protected Node getChild (char c)
+		{
+			int index = Arrays.binarySearch(chars, c);
+
+			return index < 0 ? null : children[index];
+		}
+	}
+}
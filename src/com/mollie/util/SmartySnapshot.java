@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package com.mollie.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of the names of all the Smarty plugins and PHP symbols of a project, taken while the indexes were
+ * available. Used to keep completion and block auto-close working while the project is being reindexed.
+ *
+ * Only the class and constant descriptions that were already cached are kept; taking the snapshot never resolves
+ * any.
+ */
+public class SmartySnapshot
+{
+	public static final SmartySnapshot EMPTY = new SmartySnapshot(
+		Collections.<String, SmartyPluginTrie>emptyMap(),
+		Collections.<String>emptyList(),
+		Collections.<String>emptyList(),
+		Collections.<String, List<PhpClassInfo>>emptyMap(),
+		Collections.<String>emptyList(),
+		Collections.<String, PhpConstantInfo>emptyMap()
+	);
+
+	protected final Map<String, SmartyPluginTrie> plugin_tries;
+
+	protected final List<String> function_names;
+
+	protected final List<String> class_names;
+
+	protected final Map<String, List<PhpClassInfo>> class_infos;
+
+	protected final List<String> constant_names;
+
+	protected final Map<String, PhpConstantInfo> constant_infos;
+
+	public SmartySnapshot (@NotNull Map<String, SmartyPluginTrie> plugin_tries, @NotNull List<String> function_names, @NotNull List<String> class_names, @NotNull Map<String, List<PhpClassInfo>> class_infos, @NotNull List<String> constant_names, @NotNull Map<String, PhpConstantInfo> constant_infos)
+	{
+		this.plugin_tries   = Collections.unmodifiableMap(plugin_tries);
+		this.function_names = Collections.unmodifiableList(function_names);
+		this.class_names    = Collections.unmodifiableList(class_names);
+		this.class_infos    = Collections.unmodifiableMap(class_infos);
+		this.constant_names = Collections.unmodifiableList(constant_names);
+		this.constant_infos = Collections.unmodifiableMap(constant_infos);
+	}
+
+	@NotNull
+	public Map<String, SmartyPluginTrie> getPluginTries ()
+	{
+		return plugin_tries;
+	}
+
+	@NotNull
+	public List<String> getFunctionNames ()
+	{
+		return function_names;
+	}
+
+	@NotNull
+	public List<String> getClassNames ()
+	{
+		return class_names;
+	}
+
+	/**
+	 * @param class_name The short class name.
+	 *
+	 * @return The descriptions of the classes with that name, or NULL if they weren't cached.
+	 */
+	@Nullable
+	public List<PhpClassInfo> getClassInfos (String class_name)
+	{
+		return class_infos.get(class_name);
+	}
+
+	@NotNull
+	public List<String> getConstantNames ()
+	{
+		return constant_names;
+	}
+
+	/**
+	 * @param constant_name The constant name.
+	 *
+	 * @return The description of the constant, or NULL if it wasn't cached.
+	 */
+	@Nullable
+	public PhpConstantInfo getConstantInfo (String constant_name)
+	{
+		return constant_infos.get(constant_name);
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.IOUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers for indexes about templates, e.g. the templates PHP code renders or Smarty code includes. Templates are
+ * usually named relative to a template dir, which the indexes don't know about. So these indexes are keyed by the
+ * template's file name, and their values map the full template names to the actual data. Looking up a template file
+ * is then a single lookup by file name, after which the full names are matched against the file's path.
+ */
+public class SmartyTemplates
+{
+	/**
+	 * Normalize a template name: forward slashes, and no resource type or leading "./" or "/".
+	 *
+	 * @param template The template name, e.g. "file:./admin/foo.tpl".
+	 *
+	 * @return The normalized template name, e.g. "admin/foo.tpl".
+	 */
+	@NotNull
+	public static String normalize (@NotNull String template)
+	{
+		template = StringUtil.trimStart(template.trim(), "file:").replace('\\', '/');
+
+		while (template.startsWith("./") || template.startsWith("/"))
+		{
+			template = template.substring(template.startsWith("/") ? 1 : 2);
+		}
+
+		return template;
+	}
+
+	/**
+	 * Get the index key of a template: its file name.
+	 *
+	 * @param template The normalized template name, e.g. "admin/foo.tpl".
+	 *
+	 * @return The file name, e.g. "foo.tpl".
+	 */
+	@NotNull
+	public static String getKey (@NotNull String template)
+	{
+		return template.substring(template.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Group data by template into the layout of a template index.
+	 *
+	 * @param data_by_template Map of normalized template names to data.
+	 *
+	 * @return Map of index keys to maps of normalized template names to data.
+	 */
+	@NotNull
+	public static <V> Map<String, Map<String, V>> groupByKey (@NotNull Map<String, V> data_by_template)
+	{
+		Map<String, Map<String, V>> data_by_key = new HashMap<String, Map<String, V>>();
+
+		for (Map.Entry<String, V> entry : data_by_template.entrySet())
+		{
+			String key              = getKey(entry.getKey());
+			Map<String, V> key_data = data_by_key.get(key);
+
+			if (key_data == null)
+			{
+				key_data = new HashMap<String, V>();
+				data_by_key.put(key, key_data);
+			}
+
+			key_data.put(entry.getKey(), entry.getValue());
+		}
+
+		return data_by_key;
+	}
+
+	/**
+	 * Check if a template name refers to a file: the name has to be a suffix of the file's path.
+	 *
+	 * @param file     The template file.
+	 * @param template The normalized template name.
+	 *
+	 * @return True if the template name matches the file.
+	 */
+	public static boolean matches (@NotNull VirtualFile file, @NotNull String template)
+	{
+		String path = file.getPath();
+
+		return path.equals(template) || path.endsWith("/" + template);
+	}
+
+	/**
+	 * Pass the data a template index has about a template file to a processor.
+	 *
+	 * @param index_name The template index.
+	 * @param file       The template file.
+	 * @param scope      The scope to look in.
+	 * @param processor  The processor, which gets the file the data is from and the data itself.
+	 */
+	public static <V> void processValues (@NotNull ID<String, Map<String, V>> index_name, @NotNull final VirtualFile file, @NotNull GlobalSearchScope scope, @NotNull final FileBasedIndex.ValueProcessor<V> processor)
+	{
+		FileBasedIndex.getInstance().processValues(
+			index_name,
+			file.getName(),
+			null,
+			new FileBasedIndex.ValueProcessor<Map<String, V>>()
+			{
+				public boolean process (VirtualFile source, Map<String, V> data_by_template)
+				{
+					for (Map.Entry<String, V> entry : data_by_template.entrySet())
+					{
+						if (matches(file, entry.getKey()) && !processor.process(source, entry.getValue()))
+						{
+							return false;
+						}
+					}
+
+					return true;
+				}
+			},
+			scope
+		);
+	}
+
+	/**
+	 * Create an externalizer for the values of a template index.
+	 *
+	 * @param data_externalizer The externalizer for the data of a single template.
+	 *
+	 * @return The externalizer.
+	 */
+	@NotNull
+	public static <V> DataExternalizer<Map<String, V>> createExternalizer (@NotNull final DataExternalizer<V> data_externalizer)
+	{
+		return new DataExternalizer<Map<String, V>>()
+		{
+			@Override
+			public void save (@NotNull DataOutput out, Map<String, V> data_by_template) throws IOException
+			{
+				DataInputOutputUtil.writeINT(out, data_by_template.size());
+
+				for (Map.Entry<String, V> entry : data_by_template.entrySet())
+				{
+					IOUtil.writeUTF(out, entry.getKey());
+					data_externalizer.save(out, entry.getValue());
+				}
+			}
+
+			@Override
+			public Map<String, V> read (@NotNull DataInput in) throws IOException
+			{
+				int size                        = DataInputOutputUtil.readINT(in);
+				Map<String, V> data_by_template = new HashMap<String, V>(size);
+
+				for (int i = 0; i < size; i++)
+				{
+					String template = IOUtil.readUTF(in);
+					data_by_template.put(template, data_externalizer.read(in));
+				}
+
+				return data_by_template;
+			}
+		};
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2015, Mollie B.V.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.mollie.util;
+
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import com.jetbrains.smarty.SmartyLanguage;
+import com.jetbrains.smarty.lang.SmartyTokenTypes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds the variables used or assigned in a Smarty template in a single pass over the Smarty lexer's tokens, without
+ * building a PSI tree.
+ */
+public class SmartyVariableScanner
+{
+	/**
+	 * Scan a Smarty template for variables.
+	 *
+	 * @param text    The contents of the template.
+	 * @param project The project the template is in, if any, so the lexer picks up the project's Smarty settings.
+	 *
+	 * @return Unmodifiable set of all used or assigned variables, in order of appearance.
+	 */
+	@NotNull
+	public static Set<String> scan (@NotNull CharSequence text, @Nullable Project project)
+	{
+		ParserDefinition parser_definition = LanguageParserDefinitions.INSTANCE.forLanguage(SmartyLanguage.INSTANCE);
+
+		if (parser_definition == null)
+		{
+			return Collections.emptySet();
+		}
+
+		Lexer lexer = parser_definition.createLexer(project);
+		lexer.start(text);
+
+		Set<String> variables = new LinkedHashSet<String>();
+
+		// Where we are within the current tag.
+		boolean after_tag_start = false;
+		boolean in_assign       = false;
+		boolean in_attribute    = false;
+		boolean named_attribute = false;
+
+		for (IElementType token; (token = lexer.getTokenType()) != null; lexer.advance())
+		{
+			if (token == SmartyTokenTypes.START_TAG_START || token == SmartyTokenTypes.END_TAG_START)
+			{
+				after_tag_start = token == SmartyTokenTypes.START_TAG_START;
+				in_assign       = false;
+				in_attribute    = false;
+				named_attribute = false;
+				continue;
+			}
+
+			if (token == SmartyTokenTypes.DOLLAR)
+			{
+				lexer.advance();
+
+				if (lexer.getTokenType() == null)
+				{
+					break;
+				}
+
+				addVariable(variables, getVariableName(text, lexer.getTokenStart(), lexer.getTokenEnd()));
+			}
+			else if (after_tag_start)
+			{
+				// '{assign ...}' has to start right after the accolade.
+				in_assign = token == SmartyTokenTypes.PREDEFINED_FUNCTION && isText(text, lexer.getTokenStart(), lexer.getTokenEnd(), "assign");
+			}
+			else if (in_assign)
+			{
+				// The first attribute of an assignment holds the variable name.
+				if (token == TokenType.WHITE_SPACE)
+				{
+					in_assign = !in_attribute;
+				}
+				else if (token == SmartyTokenTypes.EQ)
+				{
+					named_attribute = true;
+				}
+				else if (token == SmartyTokenTypes.STRING_LITERAL)
+				{
+					if (named_attribute)
+					{
+						// '{assign name="variable_name" value=value}' notation.
+						addVariable(variables, getTrimmedText(text, lexer.getTokenStart(), lexer.getTokenEnd()));
+					}
+					else
+					{
+						// '{assign "variable_name" value}' notation. TODO: support expressions as well.
+						addVariable(variables, getVariableName(text, lexer.getTokenStart(), lexer.getTokenEnd()));
+					}
+
+					in_assign = false;
+				}
+				else
+				{
+					in_attribute = true;
+				}
+			}
+
+			after_tag_start = false;
+		}
+
+		return Collections.unmodifiableSet(variables);
+	}
+
+	/**
+	 * See if a given range of text is or starts with a valid variable. Return an empty string otherwise.
+	 *
+	 * @param text  The text to look in.
+	 * @param start Start of the range (inclusive).
+	 * @param end   End of the range (exclusive).
+	 *
+	 * @return The variable, or an empty string if there is none.
+	 */
+	@NotNull
+	public static String getVariableName (@NotNull CharSequence text, int start, int end)
+	{
+		while (start < end && Character.isWhitespace(text.charAt(start)))
+		{
+			start++;
+		}
+
+		// First character can't be a number.
+		if (start >= end || !isIdentifierStart(text.charAt(start)))
+		{
+			return "";
+		}
+
+		// Stop at the first disallowed character.
+		int variable_end = start + 1;
+
+		while (variable_end < end && isIdentifierPart(text.charAt(variable_end)))
+		{
+			variable_end++;
+		}
+
+		return text.subSequence(start, variable_end).toString();
+	}
+
+	/**
+	 * See if a character may start a variable name.
+	 *
+	 * @param c The character.
+	 *
+	 * @return True if the character is [a-zA-Z_].
+	 */
+	public static boolean isIdentifierStart (char c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+
+	/**
+	 * See if a character may be part of a variable name.
+	 *
+	 * @param c The character.
+	 *
+	 * @return True if the character is [a-zA-Z0-9_].
+	 */
+	public static boolean isIdentifierPart (char c)
+	{
+		return isIdentifierStart(c) || (c >= '0' && c <= '9');
+	}
+
+	protected static void addVariable (Set<String> variables, String variable)
+	{
+		if (variable.length() > 0)
+		{
+			variables.add(variable);
+		}
+	}
+
+	protected static String getTrimmedText (CharSequence text, int start, int end)
+	{
+		while (start < end && Character.isWhitespace(text.charAt(start)))
+		{
+			start++;
+		}
+
+		while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+		{
+			end--;
+		}
+
+		return text.subSequence(start, end).toString();
+	}
+
+	protected static boolean isText (CharSequence text, int start, int end, String expected)
+	{
+		if (end - start != expected.length())
+		{
+			return false;
+		}
+
+		for (int i = 0; i < expected.length(); i++)
+		{
+			if (text.charAt(start + i) != expected.charAt(i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+}